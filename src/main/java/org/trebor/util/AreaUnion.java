@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Unions large collections of shapes. Rather then adding each shape to a
+ * single growing {@link Area}, which costs time proportional to the size of
+ * that area for every shape added, shapes are first grouped into clusters
+ * whose bounding boxes touch, then each cluster is unioned as a balanced
+ * tree of pairwise unions, optionally in parallel on a fork-join pool.
+ * Clusters cannot overlap one another, so they are simply appended into the
+ * resulting path with no further boolean operations.
+ * 
+ * @author trebor
+ */
+
+public class AreaUnion
+{
+  /** number of areas below which a range is unioned without forking */
+
+  static final int THRESHOLD = 8;
+
+  /**
+   * Union shapes on the calling thread.
+   * 
+   * @param shapes the shapes to union
+   * @return the union of the shapes.
+   */
+
+  public static Shape union(Collection<? extends Shape> shapes)
+  {
+    return union(shapes, null);
+  }
+
+  /**
+   * Union shapes, in parallel if a pool is provided.
+   * 
+   * @param shapes the shapes to union
+   * @param pool the pool on which to union the shapes, or null to union
+   *          them on the calling thread
+   * @return the union of the shapes.
+   */
+
+  public static Shape union(Collection<? extends Shape> shapes,
+    ForkJoinPool pool)
+  {
+    // group the shapes into clusters of touching bounding boxes, and order
+    // each cluster along the x axis so that neighbors are unioned first
+
+    List<Area[]> clusters = cluster(shapes);
+
+    // union each cluster
+
+    Area[] unions = new Area[clusters.size()];
+    if (pool == null)
+    {
+      for (int i = 0; i < unions.length; ++i)
+      {
+        Area[] cluster = clusters.get(i);
+        unions[i] = union(cluster, 0, cluster.length);
+      }
+    }
+    else
+    {
+      final List<UnionTask> tasks =
+        new ArrayList<UnionTask>(clusters.size());
+      for (Area[] cluster: clusters)
+        tasks.add(new UnionTask(cluster, 0, cluster.length));
+      pool.invoke(new RecursiveTask<Object>()
+      {
+        private static final long serialVersionUID = 1L;
+
+        protected Object compute()
+        {
+          invokeAll(tasks);
+          return null;
+        }
+      });
+      for (int i = 0; i < unions.length; ++i)
+        unions[i] = tasks.get(i).join();
+    }
+
+    // the clusters are disjoint so their outlines may simply be combined
+
+    Path2D.Double result = new Path2D.Double(Path2D.WIND_NON_ZERO);
+    for (Area union: unions)
+      result.append(union, false);
+    return result;
+  }
+
+  // union a range of areas as a balanced tree
+
+  private static Area union(Area[] areas, int from, int to)
+  {
+    if (to - from == 1)
+      return areas[from];
+
+    int mid = (from + to) >>> 1;
+    Area left = union(areas, from, mid);
+    left.add(union(areas, mid, to));
+    return left;
+  }
+
+  /** Task which unions a range of areas as a balanced tree. */
+
+  private static class UnionTask extends RecursiveTask<Area>
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final Area[] mAreas;
+    private final int mFrom;
+    private final int mTo;
+
+    UnionTask(Area[] areas, int from, int to)
+    {
+      mAreas = areas;
+      mFrom = from;
+      mTo = to;
+    }
+
+    protected Area compute()
+    {
+      if (mTo - mFrom <= THRESHOLD)
+        return union(mAreas, mFrom, mTo);
+
+      int mid = (mFrom + mTo) >>> 1;
+      UnionTask right = new UnionTask(mAreas, mid, mTo);
+      right.fork();
+      Area left = new UnionTask(mAreas, mFrom, mid).compute();
+      left.add(right.join());
+      return left;
+    }
+  }
+
+  // group shapes into clusters whose bounding boxes touch
+
+  static List<Area[]> cluster(Collection<? extends Shape> shapes)
+  {
+    final Area[] areas = new Area[shapes.size()];
+    final Rectangle2D[] bounds = new Rectangle2D[areas.length];
+    Integer[] order = new Integer[areas.length];
+    int count = 0;
+    for (Shape shape: shapes)
+    {
+      areas[count] = new Area(shape);
+      bounds[count] = areas[count].getBounds2D();
+      order[count] = count;
+      ++count;
+    }
+
+    // sweep along the x axis, joining each shape to any active shape whose
+    // bounds it touches
+
+    Arrays.sort(order, new Comparator<Integer>()
+    {
+      public int compare(Integer a, Integer b)
+      {
+        return Double.compare(bounds[a].getMinX(), bounds[b].getMinX());
+      }
+    });
+    int[] parent = new int[areas.length];
+    for (int i = 0; i < parent.length; ++i)
+      parent[i] = i;
+    List<Integer> active = new ArrayList<Integer>();
+    for (int i: order)
+    {
+      for (int j = active.size() - 1; j >= 0; --j)
+      {
+        int other = active.get(j);
+        if (bounds[other].getMaxX() < bounds[i].getMinX())
+          active.remove(j);
+        else if (bounds[other].getMaxY() >= bounds[i].getMinY() &&
+          bounds[other].getMinY() <= bounds[i].getMaxY())
+          parent[find(parent, i)] = find(parent, other);
+      }
+      active.add(i);
+    }
+
+    // collect the clusters, members ordered along the x axis
+
+    Map<Integer, List<Area>> clusters = new HashMap<Integer, List<Area>>();
+    List<Area[]> result = new ArrayList<Area[]>();
+    for (int i: order)
+    {
+      Integer root = find(parent, i);
+      List<Area> cluster = clusters.get(root);
+      if (cluster == null)
+      {
+        cluster = new ArrayList<Area>();
+        clusters.put(root, cluster);
+      }
+      cluster.add(areas[i]);
+    }
+    for (List<Area> cluster: clusters.values())
+      result.add(cluster.toArray(new Area[cluster.size()]));
+    return result;
+  }
+
+  // find the root of a union-find set, compressing the path to it
+
+  private static int find(int[] parent, int i)
+  {
+    while (parent[i] != i)
+    {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+}
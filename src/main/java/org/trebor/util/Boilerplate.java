@@ -24,22 +24,73 @@ package org.trebor.util;
 
 import java.util.Vector;
 import java.util.Iterator;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 
 import java.io.File;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 import static java.lang.System.out;
 import static java.lang.System.exit;
 
 public class Boilerplate
 {
+  /** Outcome of processing a file. */
+
+  public enum Result
+  {
+    /** the boilerplate was written to the file */
+
+    FIXED,
+
+    /** no matcher recognized the layout of the file, it was left as is */
+
+    SKIPPED,
+
+    /** the file could not be read or written */
+
+    FAILED,
+
+    /** the file has not changed since it was last fixed, and was not read */
+
+    CURRENT,
+
+    /** the file already had the boilerplate, and was not written */
+
+    UNCHANGED,
+
+    /** the file was checked and does not have the boilerplate */
+
+    MISSING
+  }
+
   public static void main(String[] args)
   {
+    if (args.length > 0 && args[0].equals("-r"))
+    {
+      BoilerplateTree.main(args);
+      return;
+    }
+
     if (args.length < 2)
     {
       printHelp("ERROR: no input files");
@@ -54,16 +105,33 @@ public class Boilerplate
     }
 
     File boilerplate = new File(args[1]);
-    if (!input.exists())
+    if (!boilerplate.exists())
     {
       printHelp("ERROR: boilerplate file does not exits: " + boilerplate);
       exit(0);
     }
 
-    Collection<IMatcher> matchers = new Vector<IMatcher>();
-    matchers.add(new JavaMatcher(true));
+    if (args.length > 2 && args[2].equals("-stream"))
+    {
+      try
+      {
+        Result result = fixStreaming(input, readLines(boilerplate),
+          createMatchers(input));
+        if (result == Result.FIXED)
+          out.println("fixed : " + input);
+        else if (result == Result.UNCHANGED)
+          out.println("unchanged : " + input);
+        else
+          out.println("FAILED: " + input);
+      }
+      catch (Exception e)
+      {
+        e.printStackTrace();
+      }
+      return;
+    }
 
-    new Boilerplate(input, boilerplate, matchers);
+    new Boilerplate(input, boilerplate, createMatchers(input));
   }
 
   /** Print help with an optional message */
@@ -72,7 +140,43 @@ public class Boilerplate
   {
     out.println("To perform boiler plate replacement:");
     out.println("");
-    out.println("   BoilerPlate <input-file> <boilerplate-file>");
+    out.println("   BoilerPlate <input-file> <boilerplate-file> [-stream]");
+    out.println("");
+    out.println("With -stream only the existing boiler plate is read and");
+    out.println("the rest of the file is copied as is.");
+    out.println("");
+    out.println("To perform boiler plate replacement across a directory tree:");
+    out.println("");
+    out.println("   BoilerPlate -r <directory> <boilerplate-file>");
+    out.println("     [-include <glob>]... [-exclude <glob>]... [-threads <n>]");
+    out.println("     [-stream] [-manifest <file>] [-quiet]");
+    out.println("     [-check [-strict] [-report <file>|-]] [-watch]");
+    out.println("");
+    out.println("Globs match paths relative to the directory, the default");
+    out.println("include is " + BoilerplateTree.DEFAULT_INCLUDE);
+    out.println("");
+    out.println("With -manifest, files fixed are recorded in the manifest");
+    out.println("file, and are not read again until they change or the");
+    out.println("boiler plate changes.");
+    out.println("");
+    out.println("With -check, files are checked but not changed. The report");
+    out.println("lists the result of each file, and the exit status is 0");
+    out.println("when all have the boiler plate, 1 when some do not, or 2");
+    out.println("when some could not be read or the check could not run.");
+    out.println("Files which are not recognized, such as #! scripts, are");
+    out.println("skipped, and only fail the check with -strict. With");
+    out.println("-manifest too, files which passed and have not changed");
+    out.println("since are not read again, and are reported as current.");
+    out.println("");
+    out.println("With -watch, after the tree is fixed it is watched, and");
+    out.println("files are fixed as they are created or modified.");
+    out.println("");
+    out.println("The comment style is chosen by file extension:");
+    out.println("");
+    for (String[] extensions: EXTENSIONS)
+      out.println("   " + extensions[0] + ": " + extensions[1]);
+    out.println("");
+    out.println("Files with other extensions are taken to be java.");
     out.println("");
     if (message != null && message.length() > 0)
     {
@@ -81,34 +185,89 @@ public class Boilerplate
     }
   }
 
-  public Boilerplate(File inputFile, File boilerplateFile,
-    Collection<IMatcher> matchers)
+  /** Create the default matchers. */
+
+  public static Collection<IMatcher> createMatchers()
   {
-    try
-    {
-      // open & read the input
+    Collection<IMatcher> matchers = new Vector<IMatcher>();
+    matchers.add(LANGUAGE_MATCHERS.get("java"));
+    return matchers;
+  }
 
-      FileInputStream inputStream = new FileInputStream(inputFile);
-      BufferedReader inputReader = new BufferedReader(
-        new InputStreamReader(inputStream));
-      Collection<String> input = new Vector<String>();
-      for (String line = inputReader.readLine(); line != null;
-           line = inputReader.readLine())
-      {
-        input.add(line);
-      }
-      inputStream.close();
+  /** file extensions of each language */
 
-      // open & read  boilerplate
+  private static final String[][] EXTENSIONS =
+  {
+    {"java", "java c h cc cpp cxx hpp cs js ts css scala groovy kt go swift"},
+    {"hash", "sh bash py rb pl properties yaml yml conf cfg"},
+    {"xml", "xml xsd xsl html htm"},
+    {"sql", "sql lua hs"},
+  };
+
+  // the matcher of each language, by name, which are compiled once and
+  // shared as they hold no per file state
+
+  private static final Map<String, IMatcher> LANGUAGE_MATCHERS;
+  static
+  {
+    Map<String, IMatcher> matchers = new LinkedHashMap<String, IMatcher>();
+    matchers.put("java", new JavaMatcher(true));
+    matchers.put("hash", new CommentMatcher("hash",
+      new String[]{"#"},
+      new String[]{"#", ""},
+      "# ",
+      "",
+      true,
+      "#!", "# -*-"));
+    matchers.put("xml", new CommentMatcher("xml",
+      new String[]{"<!--"},
+      new String[]{"-->", ""},
+      "  ",
+      "",
+      true,
+      "<?xml", "<!DOCTYPE", "<!doctype"));
+    matchers.put("sql", new CommentMatcher("sql",
+      new String[]{"--"},
+      new String[]{"--", ""},
+      "-- ",
+      "",
+      true));
+    LANGUAGE_MATCHERS = Collections.unmodifiableMap(matchers);
+  }
+
+  /** Return the matcher of each language, by name. */
 
-      BufferedReader boilerplateReader = new BufferedReader(
-        new InputStreamReader(new FileInputStream(boilerplateFile)));
-      Collection<String> boilerplate = new Vector<String>();
-      for (String line = boilerplateReader.readLine(); line != null;
-           line = boilerplateReader.readLine())
+  public static Map<String, IMatcher> getLanguageMatchers()
+  {
+    return LANGUAGE_MATCHERS;
+  }
+
+  /** Create the matchers for a file, chosen by its extension. */
+
+  public static Collection<IMatcher> createMatchers(File file)
+  {
+    String name = file.getName();
+    String extension = name.substring(name.lastIndexOf('.') + 1);
+    for (String[] extensions: EXTENSIONS)
+      if ((" " + extensions[1] + " ").contains(" " + extension + " "))
       {
-        boilerplate.add(line);
+        Collection<IMatcher> matchers = new Vector<IMatcher>();
+        matchers.add(LANGUAGE_MATCHERS.get(extensions[0]));
+        return matchers;
       }
+    return createMatchers();
+  }
+
+  public Boilerplate(File inputFile, File boilerplateFile,
+    Collection<IMatcher> matchers)
+  {
+    try
+    {
+      // read the input and boilerplate
+
+      byte[] bytes = Files.readAllBytes(inputFile.toPath());
+      Collection<String> input = readLines(bytes);
+      Collection<String> boilerplate = readLines(boilerplateFile);
 
       // process the lines
 
@@ -118,14 +277,10 @@ public class Boilerplate
 
       if (output != null)
       {
-        out.println("fixed : " + inputFile);
-        FileWriter writer = new FileWriter(inputFile);
-        for (String line: output)
-        {
-          writer.write(line + "\n");
-        }
-        writer.flush();
-        writer.close();
+        if (writeLines(inputFile, bytes, output))
+          out.println("fixed : " + inputFile);
+        else
+          out.println("unchanged : " + inputFile);
       }
       else
         out.println("FAILED: " + inputFile);
@@ -137,10 +292,392 @@ public class Boilerplate
     }
   }
 
+  /**
+   * Apply boilerplate to a file. Matchers hold no state between files, so
+   * the same matchers may be used for many files at once.
+   *
+   * @param inputFile the file to fix
+   * @param boilerplate the boilerplate lines
+   * @param matchers the matchers which locate the existing boilerplate
+   * @return whether the file was fixed, unchanged or skipped.
+   * @throws IOException if the file could not be read or written
+   */
+
+  public static Result fix(File inputFile, Collection<String> boilerplate,
+    Collection<IMatcher> matchers) throws IOException
+  {
+    byte[] bytes = Files.readAllBytes(inputFile.toPath());
+    Collection<String> output =
+      applyMatchers(readLines(bytes), boilerplate, matchers);
+    if (output == null)
+      return Result.SKIPPED;
+
+    return writeLines(inputFile, bytes, output)
+      ? Result.FIXED
+      : Result.UNCHANGED;
+  }
+
+  /**
+   * Apply boilerplate to a file, reading only as far as the end of the
+   * existing boilerplate. The rest of the file is copied byte for byte, so
+   * unlike {@link #fix(File, Collection, Collection)}, it is neither decoded
+   * nor are its line endings changed. The default charset must encode line
+   * breaks as single bytes, as ASCII does.
+   *
+   * @param inputFile the file to fix
+   * @param boilerplate the boilerplate lines
+   * @param matchers the matchers which locate the existing boilerplate
+   * @return whether the file was fixed, unchanged or skipped.
+   * @throws IOException if the file could not be read or written
+   */
+
+  public static Result fixStreaming(File inputFile,
+    Collection<String> boilerplate, Collection<IMatcher> matchers)
+    throws IOException
+  {
+    for (IMatcher matcher: matchers)
+    {
+      // each matcher reads the head of the file afresh
+
+      LineIterator lines = new LineIterator(inputFile);
+      int count;
+      long offset;
+      try
+      {
+        count = matcher.match(lines);
+        offset = count == NO_MATCH ? 0 : lines.getOffset(count);
+      }
+      finally
+      {
+        lines.close();
+      }
+
+      if (count != NO_MATCH)
+        return writeStreaming(inputFile, matcher.header(boilerplate), offset)
+          ? Result.FIXED
+          : Result.UNCHANGED;
+    }
+
+    return Result.SKIPPED;
+  }
+
+  /** Read all the lines of a file. */
+
+  public static Collection<String> readLines(File file) throws IOException
+  {
+    return readLines(Files.readAllBytes(file.toPath()));
+  }
+
+  // decode the lines of a file's content
+
+  private static Collection<String> readLines(byte[] bytes)
+    throws IOException
+  {
+    BufferedReader reader = new BufferedReader(
+      new InputStreamReader(new ByteArrayInputStream(bytes)));
+    try
+    {
+      Collection<String> lines = new Vector<String>();
+      for (String line = reader.readLine(); line != null;
+           line = reader.readLine())
+      {
+        lines.add(line);
+      }
+      return lines;
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  /**
+   * Write lines to a file, each terminated by a newline, unless the file
+   * already holds exactly those lines. The lines are written to a temporary
+   * file beside the file, which then atomically replaces it, so the file is
+   * never left partly written.
+   *
+   * @return true if the file was written, false if it was unchanged.
+   */
+
+  private static boolean writeLines(File file, byte[] original,
+    Collection<String> lines) throws IOException
+  {
+    byte[] bytes = encode(lines);
+    if (Arrays.equals(bytes, original))
+      return false;
+
+    File temp = createTempFile(file);
+    try
+    {
+      FileOutputStream output = new FileOutputStream(temp);
+      try
+      {
+        output.write(bytes);
+      }
+      finally
+      {
+        output.close();
+      }
+      replaceFile(temp, file);
+    }
+    finally
+    {
+      // only left behind if the replace failed
+
+      temp.delete();
+    }
+    return true;
+  }
+
+  // write header lines to a temporary file, followed by the input from an
+  // offset onwards, then replace the input with the temporary file, unless
+  // the input already starts with the header
+
+  private static boolean writeStreaming(File file, Collection<String> header,
+    long offset) throws IOException
+  {
+    byte[] bytes = encode(header);
+    if (bytes.length == offset && startsWith(file, bytes))
+      return false;
+
+    File temp = createTempFile(file);
+    try
+    {
+      FileInputStream input = new FileInputStream(file);
+      FileOutputStream output = new FileOutputStream(temp);
+      try
+      {
+        output.write(bytes);
+
+        FileChannel source = input.getChannel();
+        FileChannel target = output.getChannel();
+        long size = source.size();
+        for (long position = offset; position < size; /* in loop */)
+          position += source.transferTo(position, size - position, target);
+      }
+      finally
+      {
+        input.close();
+        output.close();
+      }
+      replaceFile(temp, file);
+    }
+    finally
+    {
+      // only left behind if the replace failed
+
+      temp.delete();
+    }
+    return true;
+  }
+
+  /**
+   * Encode lines as they are written to a file, each terminated by a
+   * newline, in the default charset.
+   */
+
+  static byte[] encode(Collection<String> lines)
+  {
+    StringBuilder text = new StringBuilder();
+    for (String line: lines)
+      text.append(line).append('\n');
+    return text.toString().getBytes();
+  }
+
+  // test if a file starts with the given bytes
+
+  private static boolean startsWith(File file, byte[] bytes)
+    throws IOException
+  {
+    FileInputStream input = new FileInputStream(file);
+    try
+    {
+      ByteBuffer head = ByteBuffer.allocate(bytes.length);
+      FileChannel channel = input.getChannel();
+      while (head.hasRemaining() && channel.read(head) >= 0)
+        ;
+      return !head.hasRemaining() && Arrays.equals(head.array(), bytes);
+    }
+    finally
+    {
+      input.close();
+    }
+  }
+
+  // create a temporary file in the same directory as a file, so that it may
+  // be moved over that file atomically
+
+  private static File createTempFile(File file) throws IOException
+  {
+    return File.createTempFile("." + file.getName() + ".", ".tmp",
+      file.getAbsoluteFile().getParentFile());
+  }
+
+  /**
+   * Move a file over another, keeping the permissions of that replaced. The
+   * move is atomic where the file system supports it, so the target is
+   * always either the old or new file.
+   */
+
+  static void replaceFile(File source, File target)
+    throws IOException
+  {
+    Path sourcePath = source.toPath();
+    Path targetPath = target.toPath();
+    try
+    {
+      if (Files.exists(targetPath))
+        Files.setPosixFilePermissions(sourcePath,
+          Files.getPosixFilePermissions(targetPath));
+    }
+    catch (UnsupportedOperationException ex)
+    {
+      // not a posix file system, the permissions are left as they are
+    }
+    try
+    {
+      Files.move(sourcePath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (AtomicMoveNotSupportedException ex)
+    {
+      Files.move(sourcePath, targetPath,
+        StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Iterates over the lines of a file, reading each only as it is asked
+   * for, and keeping the byte offset at which each line starts. Lines end
+   * as they do for {@link BufferedReader#readLine()}.
+   */
+
+  static class LineIterator implements Iterator<String>
+  {
+    private final InputStream mInput;
+    private final ByteArrayOutputStream mLine;
+    private final Vector<Long> mOffsets;
+    private long mPosition;
+    private String mNext;
+    private IOException mFailure;
+
+    public LineIterator(File file) throws IOException
+    {
+      this(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    public LineIterator(InputStream input) throws IOException
+    {
+      if (!input.markSupported())
+        input = new BufferedInputStream(input);
+      mInput = input;
+      mLine = new ByteArrayOutputStream();
+      mOffsets = new Vector<Long>();
+      mNext = readLine();
+    }
+
+    public boolean hasNext()
+    {
+      return mNext != null;
+    }
+
+    public String next()
+    {
+      if (mNext == null)
+        throw new NoSuchElementException();
+
+      String line = mNext;
+      try
+      {
+        mNext = readLine();
+      }
+      catch (IOException ex)
+      {
+        // an iterator can not throw, so the failure ends the lines and is
+        // thrown by close
+
+        mFailure = ex;
+        mNext = null;
+      }
+      return line;
+    }
+
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Return the byte offset at which a line starts. Lines up to and
+     * including the line after the last returned by {@link #next()} are
+     * known.
+     *
+     * @param line the index of the line
+     * @return the offset of the start of the line, or of the end of the file
+     * if there is no such line.
+     */
+
+    public long getOffset(int line)
+    {
+      return line < mOffsets.size() ? mOffsets.get(line) : mPosition;
+    }
+
+    public void close() throws IOException
+    {
+      mInput.close();
+      if (mFailure != null)
+        throw mFailure;
+    }
+
+    // read the next line, null at the end of the file
+
+    private String readLine() throws IOException
+    {
+      long start = mPosition;
+      mLine.reset();
+      int b = mInput.read();
+      if (b < 0)
+        return null;
+
+      while (b >= 0 && b != '\n' && b != '\r')
+      {
+        ++mPosition;
+        mLine.write(b);
+        b = mInput.read();
+      }
+
+      // consume the line break, which may be "\r\n"
+
+      if (b >= 0)
+      {
+        ++mPosition;
+        if (b == '\r')
+        {
+          mInput.mark(1);
+          if (mInput.read() == '\n')
+            ++mPosition;
+          else
+            mInput.reset();
+        }
+      }
+
+      mOffsets.add(start);
+      return mLine.toString();
+    }
+  }
+
   /** process lines against matchers */
 
   protected Collection<String> process(Collection<String> input, 
     Collection<String> boilerplate, Collection<IMatcher> matchers)
+  {
+    return applyMatchers(input, boilerplate, matchers);
+  }
+
+  // apply the first matcher which recognizes the input
+
+  static Collection<String> applyMatchers(Collection<String> input,
+    Collection<String> boilerplate, Collection<IMatcher> matchers)
   {
     for (IMatcher matcher: matchers)
     {
@@ -158,7 +695,34 @@ public class Boilerplate
   {
     public Collection<String> test(Collection<String> input, 
       Collection<String> boilerplate);
+
+    /**
+     * Locate the existing boilerplate at the start of the input. Only as
+     * many lines are read as are needed to find the end of the boilerplate.
+     *
+     * @return the number of leading lines to be replaced, 0 if the
+     * boilerplate is to be inserted, or NO_MATCH if the input is not
+     * recognized.
+     */
+
+    public int match(Iterator<String> input);
+
+    /** Return the lines which hold the boilerplate. */
+
+    public Collection<String> header(Collection<String> boilerplate);
+
+    /**
+     * Return a description of everything which determines how the matcher
+     * matches and what it writes, so that matchers which may behave
+     * differently have different definitions.
+     */
+
+    public String getDefinition();
   }
+
+  /** value returned by {@link IMatcher#match(Iterator)} on no match */
+
+  static final int NO_MATCH = -1;
   
   /** Abstract matcher. */
 
@@ -182,71 +746,40 @@ public class Boilerplate
       mInstertIfNotFound = instertIfNotFound;
     }
 
-    // insert at start of file
-
-    protected Collection<String> insert(Collection<String> input,
-      Collection<String> insertion)
+    public Collection<String> header(Collection<String> boilerplate)
     {
       Collection<String> output = new Vector<String>();
-
-      // insert insertion text
-      
       for (String line: mHeader)
         output.add(line);
-      for (String line: insertion)
+      for (String line: boilerplate)
         output.add(mPrefix + line + mPostfix);
       for (String line: mFooter)
         output.add(line);
-      
-      // append the input 
-
-      for (String line: input)
-        output.add(line);
-      
-      // return output
-      
       return output;
     }
 
-    // replace a range of lines, do not include the 'start' and 'end' lines
+    // insert at start of file
+
+    protected Collection<String> insert(Collection<String> input,
+      Collection<String> insertion)
+    {
+      return replace(input, 0, insertion);
+    }
+
+    // replace a number of leading lines
     
     protected Collection<String> replace(Collection<String> input,
-      String start, String end, Collection<String> replacement)
+      int count, Collection<String> replacement)
     {
-      Collection<String> output = new Vector<String>();
-      Iterator<String> i = input.iterator();
-      
-      // insert all lines before start
-      
-      while (i.hasNext())
-      {
-        String line = i.next();
-        if (line == start)
-          break;
-        else
-          output.add(line);
-      }
-      
-      // exclude all lines upto end
-      
-      while (i.hasNext())
-      {
-        String line = i.next();
-        if (line == end)
-          break;
-      }
-      
       // write out the replacement
       
-      for (String line: mHeader)
-        output.add(line);
-      for (String line: replacement)
-        output.add(mPrefix + line + mPostfix);
-      for (String line: mFooter)
-        output.add(line);
+      Collection<String> output = header(replacement);
       
-      // write out rest of the file
+      // write out rest of the file, excluding the replaced lines
       
+      Iterator<String> i = input.iterator();
+      for (int line = 0; line < count && i.hasNext(); ++line)
+        i.next();
       while (i.hasNext())
         output.add(i.next());
       
@@ -255,114 +788,315 @@ public class Boilerplate
       return output;
     }
 
-    public abstract Collection<String> test(Collection<String> input, 
-      Collection<String> boilerplate);
+    public Collection<String> test(Collection<String> input, 
+      Collection<String> boilerplate)
+    {
+      int count = match(input.iterator());
+      return count == NO_MATCH ? null : replace(input, count, boilerplate);
+    }
+
+    public abstract int match(Iterator<String> input);
 
     public boolean isBlank(String line)
     {
       return (line.trim().length() == 0);
     }
 
+    public String getDefinition()
+    {
+      StringBuilder definition = new StringBuilder(getClass().getName());
+      define(definition, mName, mPrefix, mPostfix,
+        String.valueOf(mInstertIfNotFound));
+      define(definition, mHeader);
+      define(definition, mFooter);
+      return definition.toString();
+    }
+
+    // append strings to a definition, each preceded by its length so that
+    // different strings can not run together into the same definition
+
+    protected static void define(StringBuilder definition, String... strings)
+    {
+      definition.append(' ').append(strings.length);
+      for (String string: strings)
+        definition.append(' ').append(string.length()).append(':')
+          .append(string);
+    }
+
     public String toString()
     {
       return mName;
     }
   }
 
-  /** Java matcher. */
+  /**
+   * A matcher compiled from a description of the comment which holds the
+   * boilerplate. The comment opens with the first header line, each line
+   * within starts with the prefix, and it closes with the first non blank
+   * footer line, each ignoring surrounding white space. Where the closing
+   * line is the same as the prefix, as with "#" comments, the comment is a
+   * run of line comments which ends at the first line without the prefix.
+   * <p>
+   * A block comment ends on the first line which holds the close token,
+   * wherever it is in the line, so a comment may open and close on one line.
+   * Where the prefix is only white space, as within "&lt;!-- --&gt;", any line
+   * before the close is within the comment. A comment which is followed by
+   * more than white space on its closing line is not matched, as that text
+   * would be lost with the comment.
+   * <p>
+   * Each line is classified by the tokens it starts with, and where the close
+   * token is within it, using plain string search rather than regular
+   * expressions, and the matcher
+   * moves between states using a table built once, when the matcher is
+   * constructed, of the action for every state and line class. A matcher
+   * holds no per file state, so it may be used for any number of files at
+   * once.
+   */
 
-  static class JavaMatcher extends AMatcher
+  static class CommentMatcher extends AMatcher
   {
-    enum State {PRE_BLANK, START, COMMENT, END, POST_BLANK, REPLACE, INSERT};
-    
-    private State mState = State.PRE_BLANK;
+    // line classes, which may be combined
 
-    public JavaMatcher(boolean instertIfNotFound)
+    private static final int BLANK = 1;
+    private static final int OPEN = 2;
+    private static final int CONTINUE = 4;
+    private static final int CLOSE = 8;
+    private static final int REJECT = 16;
+    private static final int TRAILING = 32;
+    private static final int CLASSES = 64;
+
+    // states
+
+    private static final int PRE_BLANK = 0;
+    private static final int START = 1;
+    private static final int COMMENT = 2;
+    private static final int END = 3;
+    private static final int POST_BLANK = 4;
+    private static final int STATES = 5;
+
+    // actions, in the low bits of a table entry with the next state above
+
+    private static final int CONSUME = 1;
+    private static final int MARK_END = 2;
+    private static final int REPLACE = 4;
+    private static final int INSERT = 8;
+    private static final int FAIL = 16;
+    private static final int ACTION_BITS = 5;
+
+    private final String mOpen;
+    private final String mContinue;
+    private final String mClose;
+    private final String[] mRejects;
+    private final boolean mLineComments;
+    private final int[] mTable;
+
+    /**
+     * Construct a comment matcher.
+     *
+     * @param reject the starts of lines, such as "#!", which must stay at
+     * the top of a file, so that a file which starts with one is not matched
+     */
+
+    public CommentMatcher(String name, String[] header, String[] footer, 
+      String prefix, String postfix, boolean instertIfNotFound,
+      String... reject)
     {
-      super("java", 
-        new String[]{"/*"}, 
-        new String[]{" */", ""}, 
-        " * ",
-        "", 
-        instertIfNotFound);
+      super(name, header, footer, prefix, postfix, instertIfNotFound);
+      mContinue = prefix.trim();
+      mOpen = header.length > 0 ? header[0].trim() : mContinue;
+      String close = mContinue;
+      for (String line: footer)
+        if (!isBlank(line))
+        {
+          close = line.trim();
+          break;
+        }
+      mClose = close;
+      mLineComments = mClose.equals(mContinue);
+      mRejects = reject.clone();
+      mTable = compile();
     }
 
-    public Collection<String> test(Collection<String> input, 
-      Collection<String> boilerplate)
+    public String getDefinition()
     {
-      Iterator<String> i = input.iterator();
-      String start = null;
-      String end = null;
+      StringBuilder definition = new StringBuilder(super.getDefinition());
+      define(definition, mRejects);
+      return definition.toString();
+    }
+
+    public int match(Iterator<String> i)
+    {
+      if (!i.hasNext())
+        return NO_MATCH;
+
+      // a line is only acted on when there is a line after it
 
+      int state = PRE_BLANK;
+      int index = 0;
+      int end = -1;
       for (String line = i.next(); i.hasNext(); /* in loop */)
       {
-        switch (mState)
+        int entry = mTable[state * CLASSES + classify(line)];
+        if ((entry & FAIL) != 0)
+          return NO_MATCH;
+        if ((entry & INSERT) != 0)
+          return 0;
+        if ((entry & REPLACE) != 0)
+          return end + 1;
+        if ((entry & MARK_END) != 0)
+          end = index;
+        line = i.next();
+        ++index;
+        state = entry >> ACTION_BITS;
+      }
+
+      return NO_MATCH;
+    }
+
+    // classify a line by the tokens it starts with, and for a block
+    // comment by where the close token is, an empty token matching nothing
+
+    int classify(String line)
+    {
+      if (isBlank(line))
+        return BLANK;
+
+      int start = 0;
+      while (start < line.length() && isSpace(line.charAt(start)))
+        ++start;
+
+      int classes = 0;
+      if (startsWith(line, mOpen, start))
+        classes |= OPEN;
+      if (startsWith(line, mContinue, start))
+        classes |= CONTINUE;
+      for (String reject: mRejects)
+        if (startsWith(line, reject, start))
+          classes |= REJECT;
+
+      if (mLineComments)
+      {
+        if (startsWith(line, mClose, start))
+          classes |= CLOSE;
+      }
+      else
+      {
+        // the close token of a line which opens the comment is looked for
+        // after the open token, so that "/*/" does not close
+
+        int close = line.indexOf(mClose, (classes & OPEN) != 0
+          ? start + mOpen.length()
+          : start);
+        if (close >= 0)
+          classes |= isBlank(line.substring(close + mClose.length()))
+            ? CLOSE
+            : TRAILING;
+      }
+      return classes;
+    }
+
+    private static boolean startsWith(String line, String token, int start)
+    {
+      return token.length() > 0 && line.startsWith(token, start);
+    }
+
+    // the white space skipped by the regular expression \s
+
+    private static boolean isSpace(char c)
+    {
+      return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' ||
+        c == '\r';
+    }
+
+    // build the table of the action for each state and line class
+
+    private int[] compile()
+    {
+      int[] table = new int[STATES * CLASSES];
+      for (int state = 0; state < STATES; ++state)
+        for (int classes = 0; classes < CLASSES; ++classes)
+          table[state * CLASSES + classes] = resolve(state, classes);
+      return table;
+    }
+
+    // follow the transitions which do not consume the line until one does,
+    // or the match is decided
+
+    private int resolve(int state, int classes)
+    {
+      boolean blank = (classes & BLANK) != 0;
+      while (true)
+      {
+        switch (state)
         {
         case PRE_BLANK:
-          if (isBlank(line))
-          {
-            if (null == start)
-              start = line;
-            line = i.next();
-          }
-          else
-          {
-            if (null == start)
-              start = line;
-            mState = State.START;
-          }
+          if ((classes & REJECT) != 0)
+            return FAIL;
+          if (blank)
+            return CONSUME | PRE_BLANK << ACTION_BITS;
+          state = START;
           break;
 
         case START:
-          if (line.matches("^\\s*/\\*.*$"))
-          {
-            line = i.next();
-            mState = State.COMMENT;
-          }
-          else 
-            mState = State.INSERT;
+          if ((classes & OPEN) == 0)
+            return INSERT;
+          if (mLineComments)
+            return CONSUME | MARK_END | COMMENT << ACTION_BITS;
+          if ((classes & (CLOSE | TRAILING)) != 0)
+            state = END;
+          else
+            return CONSUME | COMMENT << ACTION_BITS;
           break;
 
         case COMMENT:
-          if (isBlank(line) || 
-            (line.matches("^\\s*\\*.*$") && !line.matches("^\\s*\\*/.*$")))
+          if (mLineComments)
           {
-            line = i.next();
+            if ((classes & CONTINUE) != 0)
+              return CONSUME | MARK_END | COMMENT << ACTION_BITS;
+            state = POST_BLANK;
           }
+          else if ((classes & (CLOSE | TRAILING)) != 0)
+            state = END;
+
+          // within a block comment whose prefix is only white space, every
+          // line before the close is part of the comment
+
+          else if (blank || (classes & CONTINUE) != 0 ||
+            mContinue.length() == 0)
+            return CONSUME | COMMENT << ACTION_BITS;
           else
-            mState = State.END;
+            return FAIL;
           break;
 
         case END:
-          if (line.matches("^\\s*\\*/.*$"))
-          {
-            end = line;
-            line = i.next();
-            mState = State.POST_BLANK;
-          }
-          else 
-            return null;
-          break;
+          if ((classes & CLOSE) == 0)
+            return FAIL;
+          return CONSUME | MARK_END | POST_BLANK << ACTION_BITS;
 
         case POST_BLANK:
-          if (isBlank(line))
-          {
-            end = line;
-            line = i.next();
-          }
-          else
-            mState = State.REPLACE;
-          break;
-
-        case REPLACE:
-          return replace(input, start, end, boilerplate);
+          if (blank)
+            return CONSUME | MARK_END | POST_BLANK << ACTION_BITS;
+          return REPLACE;
 
-        case INSERT:
-          return insert(input, boilerplate);
+        default:
+          throw new Error("unknown state: " + state);
         }
       }
+    }
+  }
 
-      return null;
+  /** Java matcher. */
+
+  static class JavaMatcher extends CommentMatcher
+  {
+    public JavaMatcher(boolean instertIfNotFound)
+    {
+      super("java", 
+        new String[]{"/*"}, 
+        new String[]{" */", ""}, 
+        " * ",
+        "", 
+        instertIfNotFound);
     }
   }
 }
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.trebor.util.Boilerplate.IMatcher;
+import org.trebor.util.Boilerplate.LineIterator;
+import org.trebor.util.Boilerplate.Result;
+import org.trebor.util.BoilerplateTree.IFileProcessor;
+import org.trebor.util.BoilerplateTree.Summary;
+
+/**
+ * Checks files for the boilerplate without changing them. Only the head of
+ * each file is memory mapped, and it is compared byte for byte with the
+ * boilerplate the file should start with; only the lines of the head are
+ * decoded, to find where the existing boilerplate ends. A file passes, as
+ * {@link Result#UNCHANGED}, when fixing it would leave it as it is.
+ * <p>
+ * The result of each file is kept for a report, one line per file of result
+ * and path separated by a tab, in path order. Files which no matcher
+ * recognizes, such as scripts which must start with "#!", are reported as
+ * skipped, and do not fail the check unless it is strict. Files which a
+ * manifest found current, and so never reached the check, are reported as
+ * current. A checker is thread safe.
+ * 
+ * @author trebor
+ */
+
+public class BoilerplateCheck implements IFileProcessor
+{
+  /** bytes of each file mapped at first, more are mapped if needed */
+
+  public static final int HEAD_SIZE = 4096;
+
+  /** exit status when every file has the boilerplate */
+
+  public static final int STATUS_PASSED = 0;
+
+  /** exit status when some file lacks the boilerplate */
+
+  public static final int STATUS_MISSING = 1;
+
+  /** exit status when some file could not be checked */
+
+  public static final int STATUS_FAILED = 2;
+
+  private final Collection<String> mBoilerplate;
+  private final Collection<IMatcher> mMatchers;
+  private final Map<String, Result> mResults;
+  private volatile boolean mStrict;
+
+  /**
+   * Construct a checker.
+   * 
+   * @param boilerplate the boilerplate lines
+   * @param matchers the matchers which locate the existing boilerplate, or
+   *          null to choose them by the extension of each file
+   */
+
+  public BoilerplateCheck(Collection<String> boilerplate,
+    Collection<IMatcher> matchers)
+  {
+    mBoilerplate = boilerplate;
+    mMatchers = matchers;
+    mResults = new ConcurrentSkipListMap<String, Result>();
+  }
+
+  /**
+   * Set whether files which no matcher recognizes fail the check. By
+   * default they are reported as skipped but do not affect the status.
+   * 
+   * @param strict true if skipped files fail the check
+   */
+
+  public void setStrict(boolean strict)
+  {
+    mStrict = strict;
+  }
+
+  public Result process(File file) throws IOException
+  {
+    Result result;
+    try
+    {
+      result = check(file, mBoilerplate, mMatchers != null
+        ? mMatchers
+        : Boilerplate.createMatchers(file));
+    }
+    catch (IOException ex)
+    {
+      mResults.put(file.getPath(), Result.FAILED);
+      throw ex;
+    }
+    mResults.put(file.getPath(), result);
+    return result;
+  }
+
+  /**
+   * Check if a file has the boilerplate.
+   * 
+   * @param file the file to check
+   * @param boilerplate the boilerplate lines
+   * @param matchers the matchers which locate the existing boilerplate
+   * @return {@link Result#UNCHANGED} if the file has the boilerplate,
+   *         {@link Result#MISSING} if not, or {@link Result#SKIPPED} if no
+   *         matcher recognized the file.
+   * @throws IOException if the file could not be read
+   */
+
+  public static Result check(File file, Collection<String> boilerplate,
+    Collection<IMatcher> matchers) throws IOException
+  {
+    FileInputStream input = new FileInputStream(file);
+    try
+    {
+      FileChannel channel = input.getChannel();
+      long size = channel.size();
+      for (IMatcher matcher: matchers)
+      {
+        byte[] expected = Boilerplate.encode(matcher.header(boilerplate));
+        long length = Math.min(size, Math.max(HEAD_SIZE, 2L * expected.length));
+        while (true)
+        {
+          byte[] head = new byte[(int)length];
+          if (length > 0)
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, length).get(head);
+
+          LineIterator lines = new LineIterator(new ByteArrayInputStream(head));
+          int count = matcher.match(lines);
+          lines.close();
+
+          // where the lines of the head ran out before the matcher decided,
+          // map more of the file and try again
+
+          if (!lines.hasNext() && length < size &&
+            length < Integer.MAX_VALUE)
+          {
+            length = Math.min(size, Math.min(Integer.MAX_VALUE, length * 2));
+            continue;
+          }
+
+          if (count == Boilerplate.NO_MATCH)
+            break;
+
+          return lines.getOffset(count) == expected.length &&
+            startsWith(head, expected)
+            ? Result.UNCHANGED
+            : Result.MISSING;
+        }
+      }
+      return Result.SKIPPED;
+    }
+    finally
+    {
+      input.close();
+    }
+  }
+
+  /**
+   * Wrap a processor which wraps this check, such as that of a
+   * {@link BoilerplateManifest}, so that files it finds current without
+   * checking them are still reported. A current file was checked when it
+   * was recorded and has not changed since, so it passes.
+   * 
+   * @param processor the processor to wrap
+   * @return the wrapped processor.
+   */
+
+  public IFileProcessor wrap(final IFileProcessor processor)
+  {
+    return new IFileProcessor()
+    {
+      public Result process(File file) throws IOException
+      {
+        Result result = processor.process(file);
+        if (result == Result.CURRENT)
+          mResults.put(file.getPath(), result);
+        return result;
+      }
+    };
+  }
+
+  /**
+   * Return the exit status for the files checked so far.
+   * 
+   * @return {@link #STATUS_FAILED} if any file could not be checked, else
+   *         {@link #STATUS_MISSING} if any file lacks the boilerplate, or
+   *         was not recognized and the check is strict, else
+   *         {@link #STATUS_PASSED}.
+   */
+
+  public int getStatus()
+  {
+    int status = STATUS_PASSED;
+    for (Result result: mResults.values())
+      if (result == Result.FAILED)
+        return STATUS_FAILED;
+      else if (result == Result.MISSING ||
+        (result == Result.SKIPPED && mStrict))
+        status = STATUS_MISSING;
+    return status;
+  }
+
+  /**
+   * Return the exit status for a tree checked with this checker. Files
+   * which could not be reached while walking the tree never get to the
+   * checker, so they are taken from the summary of the tree.
+   * 
+   * @param summary the summary returned by
+   *          {@link BoilerplateTree#process(IFileProcessor)}
+   * @return {@link #STATUS_FAILED} if the summary has any failed file,
+   *         else the status of {@link #getStatus()}.
+   */
+
+  public int getStatus(Summary summary)
+  {
+    return summary.getCount(Result.FAILED) > 0
+      ? STATUS_FAILED
+      : getStatus();
+  }
+
+  /**
+   * Write the report of each file checked so far.
+   * 
+   * @param out the stream to write the report to
+   */
+
+  public void writeReport(PrintStream out)
+  {
+    for (Map.Entry<String, Result> entry: mResults.entrySet())
+      out.print(entry.getValue().toString().toLowerCase() + "\t" +
+        entry.getKey() + "\n");
+    out.flush();
+  }
+
+  private static boolean startsWith(byte[] bytes, byte[] prefix)
+  {
+    if (bytes.length < prefix.length)
+      return false;
+    for (int i = 0; i < prefix.length; ++i)
+      if (bytes[i] != prefix[i])
+        return false;
+    return true;
+  }
+}
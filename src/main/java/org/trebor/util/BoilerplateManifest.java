@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.trebor.util.Boilerplate.IMatcher;
+import org.trebor.util.Boilerplate.Result;
+import org.trebor.util.BoilerplateTree.IFileProcessor;
+
+/**
+ * Records the size and modification time of each file which has been given
+ * the boilerplate, so that later runs need not read files which have not
+ * changed since. The manifest also holds a hash of the boilerplate, the
+ * definitions of the matchers used and whether files are streamed, and is
+ * discarded when any of these changes, so that every file is then
+ * processed again. As a file is only recorded once it holds the header
+ * which that hash describes, no hash of each file is kept.
+ * <p>
+ * Only files which were fixed, or found to already have the boilerplate,
+ * are recorded. Files which were skipped or failed are processed again on
+ * the next run. As a file is recognized by size and modification time
+ * alone, a change which keeps the size of a file within the resolution of
+ * the file system clock may go unnoticed.
+ * <p>
+ * The manifest is a text file, the first line holding the hash, followed by
+ * a line of size, modification time and path for each file.
+ * <p>
+ * A manifest is thread safe.
+ * 
+ * @author trebor
+ */
+
+public class BoilerplateManifest
+{
+  private static final String MAGIC = "boilerplate-manifest";
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final File mFile;
+  private final String mHash;
+  private final Map<String, long[]> mEntries;
+
+  /**
+   * Construct a manifest, reading the manifest file if it exists and was
+   * written for the same boilerplate and matchers.
+   * 
+   * @param file the manifest file
+   * @param boilerplate the boilerplate lines
+   * @param matchers the matchers which locate the existing boilerplate
+   * @throws IOException if the manifest file exists but could not be read
+   */
+
+  public BoilerplateManifest(File file, Collection<String> boilerplate,
+    Collection<IMatcher> matchers) throws IOException
+  {
+    this(file, boilerplate, matchers, false);
+  }
+
+  /**
+   * Construct a manifest, reading the manifest file if it exists and was
+   * written for the same boilerplate, matchers and mode of processing.
+   * 
+   * @param file the manifest file
+   * @param boilerplate the boilerplate lines
+   * @param matchers the matchers which locate the existing boilerplate
+   * @param streaming true if files are fixed by streaming, see
+   *          {@link Boilerplate#fixStreaming(File, Collection, Collection)}
+   * @throws IOException if the manifest file exists but could not be read
+   */
+
+  public BoilerplateManifest(File file, Collection<String> boilerplate,
+    Collection<IMatcher> matchers, boolean streaming) throws IOException
+  {
+    mFile = file;
+    mHash = hash(boilerplate, matchers, streaming);
+    mEntries = new ConcurrentHashMap<String, long[]>();
+    if (file.exists())
+      read();
+  }
+
+  /**
+   * Test if a file is unchanged since it was recorded.
+   * 
+   * @param file the file to test
+   * @return true if the file has the size and modification time recorded.
+   */
+
+  public boolean isCurrent(File file)
+  {
+    long[] entry = mEntries.get(key(file));
+    return entry != null && entry[0] == file.length() &&
+      entry[1] == file.lastModified();
+  }
+
+  /**
+   * Record the current size and modification time of a file.
+   * 
+   * @param file the file to record
+   */
+
+  public void record(File file)
+  {
+    mEntries.put(key(file), new long[] {file.length(), file.lastModified()});
+  }
+
+  /**
+   * Return the number of files recorded.
+   * 
+   * @return the number of recorded files.
+   */
+
+  public int size()
+  {
+    return mEntries.size();
+  }
+
+  /**
+   * Wrap a file processor so that files which are current are not
+   * processed, but reported as {@link Result#CURRENT}, and files which are
+   * fixed or unchanged are recorded.
+   * 
+   * @param processor the processor to wrap
+   * @return the wrapped processor.
+   */
+
+  public IFileProcessor wrap(final IFileProcessor processor)
+  {
+    return new IFileProcessor()
+    {
+      public Result process(File file) throws IOException
+      {
+        if (isCurrent(file))
+          return Result.CURRENT;
+
+        Result result = processor.process(file);
+        if (result == Result.FIXED || result == Result.UNCHANGED)
+          record(file);
+        return result;
+      }
+    };
+  }
+
+  /**
+   * Write the manifest file. Entries of files which no longer exist are
+   * dropped. The file is written beside the manifest and then moved into
+   * place, so an interrupted write leaves the previous manifest intact.
+   * 
+   * @throws IOException if the manifest could not be written
+   */
+
+  public void save() throws IOException
+  {
+    Map<String, long[]> entries = new TreeMap<String, long[]>(mEntries);
+    File temp = new File(mFile.getAbsolutePath() + ".tmp");
+    Writer writer =
+      new OutputStreamWriter(new FileOutputStream(temp), UTF8);
+    try
+    {
+      writer.write(MAGIC + " " + mHash + "\n");
+      for (Map.Entry<String, long[]> entry: entries.entrySet())
+        if (new File(entry.getKey()).exists())
+          writer.write(entry.getValue()[0] + " " + entry.getValue()[1] + " " +
+            entry.getKey() + "\n");
+    }
+    finally
+    {
+      writer.close();
+    }
+    Boilerplate.replaceFile(temp, mFile);
+  }
+
+  // read the entries of the manifest file, unless its hash differs
+
+  private void read() throws IOException
+  {
+    BufferedReader reader = new BufferedReader(
+      new InputStreamReader(new FileInputStream(mFile), UTF8));
+    try
+    {
+      String header = reader.readLine();
+      if (header == null || !header.equals(MAGIC + " " + mHash))
+        return;
+
+      for (String line = reader.readLine(); line != null;
+           line = reader.readLine())
+      {
+        String[] fields = line.split(" ", 3);
+        if (fields.length != 3)
+          throw new IOException("malformed manifest line: " + line);
+        mEntries.put(fields[2], new long[] {Long.parseLong(fields[0]),
+          Long.parseLong(fields[1])});
+      }
+    }
+    catch (NumberFormatException ex)
+    {
+      throw new IOException("malformed manifest: " + mFile, ex);
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  private static String key(File file)
+  {
+    return file.getAbsolutePath();
+  }
+
+  // hash the boilerplate, matchers and mode, which together determine the
+  // output
+
+  private static String hash(Collection<String> boilerplate,
+    Collection<IMatcher> matchers, boolean streaming)
+  {
+    try
+    {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update((byte)(streaming ? 1 : 0));
+      for (IMatcher matcher: matchers)
+        digest.update((matcher.getDefinition() + "\n").getBytes(UTF8));
+      digest.update((byte)0);
+      for (String line: boilerplate)
+        digest.update((line + "\n").getBytes(UTF8));
+
+      StringBuilder hex = new StringBuilder();
+      for (byte b: digest.digest())
+        hex.append(String.format("%02x", b));
+      return hex.toString();
+    }
+    catch (NoSuchAlgorithmException ex)
+    {
+      throw new Error("SHA-1 not available", ex);
+    }
+  }
+}
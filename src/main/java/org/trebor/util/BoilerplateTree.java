@@ -0,0 +1,571 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.trebor.util.Boilerplate.IMatcher;
+import org.trebor.util.Boilerplate.Result;
+
+import static java.lang.System.out;
+import static java.lang.System.exit;
+
+/**
+ * Applies boilerplate to every file in a directory tree whose path, relative
+ * to the root of the tree, matches an include glob and no exclude glob.
+ * Directories which match an exclude glob are not entered. Files are
+ * processed concurrently on a bounded pool of threads as the tree is walked,
+ * and a summary of the results is returned once all files are done.
+ * <p>
+ * Globs use the syntax of {@link FileSystem#getPathMatcher(String)}.
+ * 
+ * @author trebor
+ */
+
+public class BoilerplateTree
+{
+  /** include glob used when none is given */
+
+  public static final String DEFAULT_INCLUDE = "**.java";
+
+  /** Processes a single file of the tree. */
+
+  public static interface IFileProcessor
+  {
+    /**
+     * Process a file. This is called concurrently from several threads.
+     * 
+     * @param file the file to process
+     * @return the outcome of processing the file.
+     * @throws IOException if the file could not be read or written, which
+     *           is counted as {@link Result#FAILED}
+     */
+
+    public Result process(File file) throws IOException;
+  }
+
+  /** Counts of the outcome of processing each file of a tree. */
+
+  public static class Summary
+  {
+    private final Map<Result, AtomicInteger> mCounts;
+
+    Summary()
+    {
+      mCounts = new EnumMap<Result, AtomicInteger>(Result.class);
+      for (Result result: Result.values())
+        mCounts.put(result, new AtomicInteger());
+    }
+
+    void add(Result result)
+    {
+      mCounts.get(result).incrementAndGet();
+    }
+
+    /**
+     * Return the number of files with a given outcome.
+     * 
+     * @param result the outcome
+     * @return the number of files with that outcome.
+     */
+
+    public int getCount(Result result)
+    {
+      return mCounts.get(result).get();
+    }
+
+    /**
+     * Return the number of files processed.
+     * 
+     * @return the total number of files.
+     */
+
+    public int getTotal()
+    {
+      int total = 0;
+      for (AtomicInteger count: mCounts.values())
+        total += count.get();
+      return total;
+    }
+
+    public String toString()
+    {
+      StringBuilder summary = new StringBuilder();
+      for (Result result: Result.values())
+      {
+        if (summary.length() > 0)
+          summary.append(", ");
+        summary.append(result.toString().toLowerCase()).append(": ")
+          .append(getCount(result));
+      }
+      return summary.toString();
+    }
+  }
+
+  private final Path mRoot;
+  private final Collection<PathMatcher> mIncludes;
+  private final Collection<PathMatcher> mExcludes;
+  private final int mThreads;
+  private boolean mVerbose = true;
+
+  /**
+   * Construct a tree processor.
+   * 
+   * @param root the root directory of the tree
+   * @param includes globs of the files to process, if empty
+   *          {@link #DEFAULT_INCLUDE} is used
+   * @param excludes globs of the files and directories to ignore
+   * @param threads number of files to process at once
+   */
+
+  public BoilerplateTree(File root, Collection<String> includes,
+    Collection<String> excludes, int threads)
+  {
+    if (threads < 1)
+      throw new IllegalArgumentException("threads must be positive: " +
+        threads);
+
+    mRoot = root.toPath();
+    FileSystem fileSystem = mRoot.getFileSystem();
+    mIncludes = new Vector<PathMatcher>();
+    for (String glob: includes.isEmpty()
+      ? Collections.singleton(DEFAULT_INCLUDE)
+      : includes)
+      mIncludes.add(fileSystem.getPathMatcher("glob:" + glob));
+    mExcludes = new Vector<PathMatcher>();
+    for (String glob: excludes)
+      mExcludes.add(fileSystem.getPathMatcher("glob:" + glob));
+    mThreads = threads;
+  }
+
+  /**
+   * Return the root directory of the tree.
+   * 
+   * @return the root directory.
+   */
+
+  public Path getRoot()
+  {
+    return mRoot;
+  }
+
+  // the number of files to process at once
+
+  int getThreads()
+  {
+    return mThreads;
+  }
+
+  /**
+   * Set whether the outcome of each file is printed as it is processed.
+   * Files which fail are always printed, files which are current never.
+   * 
+   * @param verbose true to print each file
+   */
+
+  public void setVerbose(boolean verbose)
+  {
+    mVerbose = verbose;
+  }
+
+  /**
+   * Apply boilerplate to each file of the tree.
+   * 
+   * @param boilerplate the boilerplate lines
+   * @param matchers the matchers which locate the existing boilerplate
+   * @return a summary of the outcome for each file.
+   * @throws IOException if the tree could not be walked
+   * @throws InterruptedException if interrupted while waiting for files to
+   *           be processed
+   */
+
+  public Summary fix(Collection<String> boilerplate,
+    Collection<IMatcher> matchers)
+    throws IOException, InterruptedException
+  {
+    return fix(boilerplate, matchers, false);
+  }
+
+  /**
+   * Apply boilerplate to each file of the tree.
+   * 
+   * @param boilerplate the boilerplate lines
+   * @param matchers the matchers which locate the existing boilerplate
+   * @param streaming true to read only the head of each file, see
+   *          {@link Boilerplate#fixStreaming(File, Collection, Collection)}
+   * @return a summary of the outcome for each file.
+   * @throws IOException if the tree could not be walked
+   * @throws InterruptedException if interrupted while waiting for files to
+   *           be processed
+   */
+
+  public Summary fix(Collection<String> boilerplate,
+    Collection<IMatcher> matchers, boolean streaming)
+    throws IOException, InterruptedException
+  {
+    return process(fixer(boilerplate, matchers, streaming));
+  }
+
+  /**
+   * Create a processor which applies boilerplate to each file.
+   * 
+   * @param boilerplate the boilerplate lines
+   * @param matchers the matchers which locate the existing boilerplate, or
+   *          null to choose them by the extension of each file, see
+   *          {@link Boilerplate#createMatchers(File)}
+   * @param streaming true to read only the head of each file, see
+   *          {@link Boilerplate#fixStreaming(File, Collection, Collection)}
+   * @return the processor.
+   */
+
+  public static IFileProcessor fixer(final Collection<String> boilerplate,
+    final Collection<IMatcher> matchers, final boolean streaming)
+  {
+    return new IFileProcessor()
+    {
+      public Result process(File file) throws IOException
+      {
+        Collection<IMatcher> fileMatchers = matchers != null
+          ? matchers
+          : Boilerplate.createMatchers(file);
+        return streaming
+          ? Boilerplate.fixStreaming(file, boilerplate, fileMatchers)
+          : Boilerplate.fix(file, boilerplate, fileMatchers);
+      }
+    };
+  }
+
+  /**
+   * Process each file of the tree.
+   * 
+   * @param processor the processor applied to each file
+   * @return a summary of the outcome for each file.
+   * @throws IOException if the tree could not be walked
+   * @throws InterruptedException if interrupted while waiting for files to
+   *           be processed
+   */
+
+  public Summary process(final IFileProcessor processor)
+    throws IOException, InterruptedException
+  {
+    final Summary summary = new Summary();
+    final ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+    try
+    {
+      Files.walkFileTree(mRoot, new SimpleFileVisitor<Path>()
+      {
+        public FileVisitResult preVisitDirectory(Path dir,
+          BasicFileAttributes attributes)
+        {
+          return dir.equals(mRoot) || !isExcluded(mRoot.relativize(dir))
+            ? FileVisitResult.CONTINUE
+            : FileVisitResult.SKIP_SUBTREE;
+        }
+
+        public FileVisitResult visitFile(final Path file,
+          BasicFileAttributes attributes)
+        {
+          if (attributes.isRegularFile() &&
+            isIncluded(mRoot.relativize(file)))
+          {
+            pool.execute(new Runnable()
+            {
+              public void run()
+              {
+                summary.add(processFile(processor, file.toFile()));
+              }
+            });
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult visitFileFailed(Path file, IOException ex)
+        {
+          report(Result.FAILED, file.toFile(), ex);
+          summary.add(Result.FAILED);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    finally
+    {
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+    return summary;
+  }
+
+  /**
+   * Test if a path, relative to the root of the tree, is to be processed.
+   * 
+   * @param path the path relative to the root
+   * @return true if the path matches an include glob and no exclude glob.
+   */
+
+  public boolean isIncluded(Path path)
+  {
+    if (isExcluded(path))
+      return false;
+    for (PathMatcher include: mIncludes)
+      if (include.matches(path))
+        return true;
+    return false;
+  }
+
+  // test if a path matches an exclude glob
+
+  boolean isExcluded(Path path)
+  {
+    for (PathMatcher exclude: mExcludes)
+      if (exclude.matches(path))
+        return true;
+    return false;
+  }
+
+  // process a file, reporting the outcome
+
+  Result processFile(IFileProcessor processor, File file)
+  {
+    Result result;
+    Exception failure = null;
+    try
+    {
+      result = processor.process(file);
+    }
+    catch (Exception ex)
+    {
+      result = Result.FAILED;
+      failure = ex;
+    }
+    report(result, file, failure);
+    return result;
+  }
+
+  // print the outcome of a file
+
+  private void report(Result result, File file, Exception failure)
+  {
+    if (result == Result.FAILED)
+      out.println("FAILED: " + file + (failure == null
+        ? ""
+        : " (" + failure + ")"));
+    else if (mVerbose && result != Result.CURRENT)
+      out.println(String.format("%-8s: %s", result.toString().toLowerCase(),
+        file));
+  }
+
+  /**
+   * Apply boilerplate to a directory tree.
+   * 
+   * @param args -r &lt;directory&gt; &lt;boilerplate-file&gt; followed by
+   *          options, see {@link Boilerplate#printHelp(String)}
+   */
+
+  public static void main(String[] args)
+  {
+    // a check must not pass when it could not be run
+
+    boolean check = Arrays.asList(args).contains("-check");
+    int errorStatus = check ? BoilerplateCheck.STATUS_FAILED : 0;
+
+    if (args.length < 3)
+    {
+      Boilerplate.printHelp("ERROR: no directory or boilerplate file");
+      exit(errorStatus);
+    }
+
+    File root = new File(args[1]);
+    if (!root.isDirectory())
+    {
+      Boilerplate.printHelp("ERROR: directory does not exits: " + root);
+      exit(errorStatus);
+    }
+
+    File boilerplateFile = new File(args[2]);
+    if (!boilerplateFile.exists())
+    {
+      Boilerplate.printHelp("ERROR: boilerplate file does not exits: " +
+        boilerplateFile);
+      exit(errorStatus);
+    }
+
+    Collection<String> includes = new Vector<String>();
+    Collection<String> excludes = new Vector<String>();
+    int threads = Runtime.getRuntime().availableProcessors();
+    boolean verbose = true;
+    boolean streaming = false;
+    File manifestFile = null;
+    boolean strict = false;
+    String report = null;
+    boolean watch = false;
+    for (int i = 3; i < args.length; ++i)
+    {
+      String option = args[i];
+      if (option.equals("-quiet"))
+        verbose = false;
+      else if (option.equals("-stream"))
+        streaming = true;
+      else if (option.equals("-check"))
+        check = true;
+      else if (option.equals("-strict"))
+        strict = true;
+      else if (option.equals("-watch"))
+        watch = true;
+      else if (i + 1 == args.length)
+      {
+        Boilerplate.printHelp("ERROR: unknown option or missing value: " +
+          option);
+        exit(errorStatus);
+      }
+      else if (option.equals("-include"))
+        includes.add(args[++i]);
+      else if (option.equals("-exclude"))
+        excludes.add(args[++i]);
+      else if (option.equals("-threads"))
+      {
+        try
+        {
+          threads = Integer.parseInt(args[++i]);
+        }
+        catch (NumberFormatException ex)
+        {
+          Boilerplate.printHelp("ERROR: bad thread count: " + args[i]);
+          exit(errorStatus);
+        }
+      }
+      else if (option.equals("-manifest"))
+        manifestFile = new File(args[++i]);
+      else if (option.equals("-report"))
+        report = args[++i];
+      else
+      {
+        Boilerplate.printHelp("ERROR: unknown option: " + option);
+        exit(errorStatus);
+      }
+    }
+
+    if (check && watch)
+    {
+      Boilerplate.printHelp("ERROR: -check and -watch can not be combined");
+      exit(errorStatus);
+    }
+
+    try
+    {
+      BoilerplateTree tree =
+        new BoilerplateTree(root, includes, excludes, threads);
+      tree.setVerbose(verbose);
+      Collection<String> boilerplate = Boilerplate.readLines(boilerplateFile);
+      BoilerplateCheck checker = null;
+      IFileProcessor processor = fixer(boilerplate, null, streaming);
+      if (check)
+      {
+        processor = checker = new BoilerplateCheck(boilerplate, null);
+        checker.setStrict(strict);
+      }
+      BoilerplateManifest manifest = null;
+      if (manifestFile != null)
+      {
+        manifest = new BoilerplateManifest(manifestFile, boilerplate,
+          Boilerplate.getLanguageMatchers().values(), streaming);
+        processor = manifest.wrap(processor);
+        if (checker != null)
+          processor = checker.wrap(processor);
+      }
+
+      Summary summary = tree.process(processor);
+      if (manifest != null)
+        manifest.save();
+      out.println(summary);
+
+      // a check writes its report and exits with its status
+
+      if (checker != null)
+      {
+        if (report != null && report.equals("-"))
+          checker.writeReport(out);
+        else if (report != null)
+        {
+          PrintStream reportStream = new PrintStream(report, "UTF-8");
+          checker.writeReport(reportStream);
+          reportStream.close();
+        }
+        int status = checker.getStatus(summary);
+        if (status != BoilerplateCheck.STATUS_PASSED)
+          exit(status);
+      }
+
+      // keep fixing files as they change, until killed
+
+      if (watch)
+      {
+        if (manifest != null)
+        {
+          final BoilerplateManifest finalManifest = manifest;
+          Runtime.getRuntime().addShutdownHook(new Thread()
+          {
+            public void run()
+            {
+              try
+              {
+                finalManifest.save();
+              }
+              catch (IOException ex)
+              {
+                ex.printStackTrace();
+              }
+            }
+          });
+        }
+        out.println("watching: " + root);
+        new BoilerplateWatcher(tree, processor,
+          BoilerplateWatcher.DEFAULT_QUIET_PERIOD).watch();
+      }
+    }
+    catch (Exception e)
+    {
+      e.printStackTrace();
+      if (check)
+        exit(BoilerplateCheck.STATUS_FAILED);
+    }
+  }
+}
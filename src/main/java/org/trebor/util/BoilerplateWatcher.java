@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.trebor.util.Boilerplate.Result;
+import org.trebor.util.BoilerplateTree.IFileProcessor;
+import org.trebor.util.BoilerplateTree.Summary;
+
+/**
+ * Watches a directory tree and processes each file of the tree which is
+ * created or modified, so that boilerplate is kept in place as files are
+ * added without walking the whole tree again.
+ * <p>
+ * Editors and version control tools tend to touch many files, or the same
+ * file many times, in quick succession. Events are therefore collected
+ * until no new event has arrived for a quiet period, and each file is then
+ * processed once. So that a file which is written continuously is not put
+ * off forever, a batch is also processed once its first event is
+ * {@link #MAX_DELAY_PERIODS} quiet periods old.
+ * <p>
+ * Directories created in the tree are watched as they appear, and the
+ * files already in them are processed. Directories which vanish before they
+ * can be watched are passed over. If the watch service loses events the
+ * whole tree is processed again.
+ * <p>
+ * So that the events caused by the processor rewriting a file are ignored,
+ * the size and modification time of each file are remembered once the
+ * processor leaves the file as it is. A file which the processor fixes is
+ * processed again, up to {@link #MAX_PASSES} times, and the size and
+ * modification time are taken before the pass which changes nothing, so an
+ * edit made meanwhile is not mistaken for the processor's own. Files which
+ * fail, or are still being changed, are tried again on their next event,
+ * and files which are deleted are forgotten.
+ * 
+ * @author trebor
+ */
+
+public class BoilerplateWatcher implements Closeable
+{
+  /** default quiet period in milliseconds */
+
+  public static final long DEFAULT_QUIET_PERIOD = 500;
+
+  /** quiet periods after which a batch is processed regardless of events */
+
+  public static final int MAX_DELAY_PERIODS = 10;
+
+  /** most times a file is processed in a batch while it is being fixed */
+
+  public static final int MAX_PASSES = 3;
+
+  private final BoilerplateTree mTree;
+  private final IFileProcessor mProcessor;
+  private final long mQuietPeriod;
+  private final WatchService mWatchService;
+  private final Map<WatchKey, Path> mDirectories;
+  private final Map<Path, String> mStamps;
+  private final Summary mSummary;
+  private final AtomicInteger mBatches;
+
+  /**
+   * Construct a watcher and start watching the directories of the tree.
+   * Files are not processed until {@link #watch()} is called.
+   * 
+   * @param tree the tree to watch
+   * @param processor the processor applied to each created or modified
+   *          file
+   * @param quietPeriod milliseconds without events after which collected
+   *          files are processed
+   * @throws IOException if the tree could not be walked or watched
+   */
+
+  public BoilerplateWatcher(BoilerplateTree tree, IFileProcessor processor,
+    long quietPeriod) throws IOException
+  {
+    if (quietPeriod < 0)
+      throw new IllegalArgumentException("quiet period must not be negative: " +
+        quietPeriod);
+
+    mTree = tree;
+    mProcessor = processor;
+    mQuietPeriod = TimeUnit.MILLISECONDS.toNanos(quietPeriod);
+    mWatchService = tree.getRoot().getFileSystem().newWatchService();
+    mDirectories = new ConcurrentHashMap<WatchKey, Path>();
+    mStamps = new ConcurrentHashMap<Path, String>();
+    mSummary = new Summary();
+    mBatches = new AtomicInteger();
+    register(tree.getRoot(), null);
+    if (mDirectories.isEmpty())
+    {
+      mWatchService.close();
+      throw new IOException("can not watch: " + tree.getRoot());
+    }
+  }
+
+  /**
+   * Process created and modified files until the watcher is closed.
+   * 
+   * @throws InterruptedException if interrupted while waiting for events or
+   *           for files to be processed
+   */
+
+  public void watch() throws InterruptedException
+  {
+    ExecutorService pool = Executors.newFixedThreadPool(mTree.getThreads());
+    Collection<Path> pending = new LinkedHashSet<Path>();
+    long first = 0;
+    long last = 0;
+    try
+    {
+      while (true)
+      {
+        // wait for an event, or until the pending files are due
+
+        WatchKey key;
+        if (pending.isEmpty())
+          key = mWatchService.take();
+        else
+        {
+          long wait = Math.min(last + mQuietPeriod,
+            first + MAX_DELAY_PERIODS * mQuietPeriod) - System.nanoTime();
+          key = wait > 0
+            ? mWatchService.poll(wait, TimeUnit.NANOSECONDS)
+            : null;
+          if (key == null)
+          {
+            processBatch(pool, pending);
+            pending.clear();
+            continue;
+          }
+        }
+
+        // collect the files of the event
+
+        if (pending.isEmpty())
+          first = System.nanoTime();
+        last = System.nanoTime();
+        Path directory = mDirectories.get(key);
+        for (WatchEvent<?> event: key.pollEvents())
+        {
+          if (event.kind() == OVERFLOW)
+            register(mTree.getRoot(), pending);
+          else if (directory != null && event.kind() == ENTRY_DELETE)
+            pending.add(directory.resolve((Path)event.context()));
+          else if (directory != null)
+            collect(directory.resolve((Path)event.context()), pending);
+        }
+        if (!key.reset())
+          mDirectories.remove(key);
+      }
+    }
+    catch (ClosedWatchServiceException ex)
+    {
+      // the watcher was closed
+    }
+    finally
+    {
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Stop watching the tree. Files currently being processed are finished
+   * before {@link #watch()} returns, files not yet processed are dropped.
+   * 
+   * @throws IOException if the watch service could not be closed
+   */
+
+  public void close() throws IOException
+  {
+    mWatchService.close();
+  }
+
+  /**
+   * Return the outcome of each file processed so far.
+   * 
+   * @return the summary of all batches.
+   */
+
+  public Summary getSummary()
+  {
+    return mSummary;
+  }
+
+  /**
+   * Return the number of batches of files processed so far.
+   * 
+   * @return the number of batches.
+   */
+
+  public int getBatchCount()
+  {
+    return mBatches.get();
+  }
+
+  /**
+   * Return the number of files whose size and modification time are
+   * remembered.
+   * 
+   * @return the number of remembered files.
+   */
+
+  int getStampCount()
+  {
+    return mStamps.size();
+  }
+
+  // process a batch of files on the pool and wait for them to finish
+
+  private void processBatch(ExecutorService pool, Collection<Path> files)
+    throws InterruptedException
+  {
+    Collection<Callable<Object>> tasks = new Vector<Callable<Object>>();
+    for (final Path file: files)
+    {
+      if (!Files.isRegularFile(file, NOFOLLOW_LINKS))
+      {
+        forget(file);
+        continue;
+      }
+      if (stamp(file).equals(mStamps.get(file)))
+        continue;
+
+      tasks.add(new Callable<Object>()
+      {
+        public Object call()
+        {
+          processFile(file);
+          return null;
+        }
+      });
+    }
+    pool.invokeAll(tasks);
+    mBatches.incrementAndGet();
+  }
+
+  // process a file until the processor leaves it as it is, and remember
+  // the size and modification time the file had before that last pass
+
+  private void processFile(Path file)
+  {
+    String stamp = stamp(file);
+    Result result = mTree.processFile(mProcessor, file.toFile());
+    mSummary.add(result);
+    for (int pass = 1; result == Result.FIXED && pass < MAX_PASSES; ++pass)
+    {
+      stamp = stamp(file);
+      try
+      {
+        result = mProcessor.process(file.toFile());
+      }
+      catch (Exception ex)
+      {
+        result = Result.FAILED;
+      }
+    }
+
+    if (result == Result.FIXED || result == Result.FAILED)
+      mStamps.remove(file);
+    else
+      mStamps.put(file, stamp);
+  }
+
+  // forget a deleted file, or the files below a deleted directory
+
+  private void forget(Path path)
+  {
+    for (Path file: mStamps.keySet())
+      if (file.startsWith(path))
+        mStamps.remove(file);
+  }
+
+  // collect a created or modified path, watching new directories
+
+  private void collect(Path path, Collection<Path> pending)
+  {
+    Path relative = mTree.getRoot().relativize(path);
+    if (Files.isDirectory(path, NOFOLLOW_LINKS))
+    {
+      if (!mTree.isExcluded(relative))
+        register(path, pending);
+    }
+    else if (mTree.isIncluded(relative))
+      pending.add(path);
+  }
+
+  // watch a directory and those below it which are not excluded, adding
+  // the included files found to pending if it is not null
+
+  private void register(final Path start, final Collection<Path> pending)
+  {
+    final Path root = mTree.getRoot();
+    try
+    {
+      Files.walkFileTree(start, new SimpleFileVisitor<Path>()
+      {
+        public FileVisitResult preVisitDirectory(Path dir,
+          BasicFileAttributes attributes)
+        {
+          if (!dir.equals(root) && mTree.isExcluded(root.relativize(dir)))
+            return FileVisitResult.SKIP_SUBTREE;
+
+          // a directory may vanish before it is watched, editors and build
+          // tools create and remove them all the time
+
+          try
+          {
+            mDirectories.put(dir.register(mWatchService, ENTRY_CREATE,
+              ENTRY_MODIFY, ENTRY_DELETE), dir);
+          }
+          catch (IOException ex)
+          {
+            return FileVisitResult.SKIP_SUBTREE;
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult visitFile(Path file,
+          BasicFileAttributes attributes)
+        {
+          if (pending != null && attributes.isRegularFile() &&
+            mTree.isIncluded(root.relativize(file)))
+            pending.add(file);
+          return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult visitFileFailed(Path file, IOException ex)
+        {
+          // the file vanished or can not be read, the next event will tell
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    catch (IOException ex)
+    {
+      // every failure is passed over by the visitor, so none is thrown
+    }
+  }
+
+  // the size and modification time of a file, or empty if unknown
+
+  private static String stamp(Path file)
+  {
+    try
+    {
+      BasicFileAttributes attributes =
+        Files.readAttributes(file, BasicFileAttributes.class, NOFOLLOW_LINKS);
+      return attributes.size() + " " +
+        attributes.lastModifiedTime().toMillis();
+    }
+    catch (IOException ex)
+    {
+      return "";
+    }
+  }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.AlphaComposite;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Records a sequence of frames of a component as numbered PNG files. Unlike
+ * {@link ShapeTools#captureAndStoreImage(Component, File)}, the calling
+ * thread only paints the component into a pooled image, see
+ * {@link ShapeTools#paintImage(Component, ImagePool)}, while encoding and
+ * writing is done on a pool of background threads, so recording an
+ * animation does not stall it.
+ * <p>
+ * At most a fixed number of frames, the ring, may be waiting to be encoded.
+ * When the ring is full, a capture either blocks until a frame has been
+ * written, or drops the frame, according to the {@link Backpressure}
+ * chosen. Frames are numbered in the order they are captured, dropped frames
+ * are not numbered, so the files sort into capture order however the writes
+ * complete.
+ * <p>
+ * A frame recorder is thread safe, though frames captured concurrently are
+ * numbered in no particular order.
+ * 
+ * @author trebor
+ */
+
+public class FrameRecorder
+{
+  /** What to do with a frame captured when the ring is full. */
+
+  public enum Backpressure
+  {
+    /** wait for space in the ring */
+
+    BLOCK,
+
+    /** discard the frame */
+
+    DROP
+  }
+
+  private final File mDirectory;
+  private final String mPrefix;
+  private final Backpressure mBackpressure;
+  private final Semaphore mRing;
+  private final int mRingSize;
+  private final ImagePool mPool;
+  private final ExecutorService mEncoders;
+  private final AtomicInteger mFrameNumber = new AtomicInteger();
+  private final AtomicLong mDropped = new AtomicLong();
+  private final AtomicLong mWritten = new AtomicLong();
+  private final AtomicLong mFailed = new AtomicLong();
+  private final AtomicLong mEncodeNanos = new AtomicLong();
+  private final AtomicLong mMaxEncodeNanos = new AtomicLong();
+  private volatile IOException mFailure;
+  private volatile boolean mClosed;
+
+  /**
+   * Construct a frame recorder.
+   * 
+   * @param directory directory into which frames are written
+   * @param prefix file name prefix of each frame, which is followed by the
+   *          frame number and ".png"
+   * @param ringSize maximum number of frames waiting to be written
+   * @param encoders number of threads which encode and write frames
+   * @param backpressure what to do when the ring is full
+   */
+
+  public FrameRecorder(File directory, String prefix, int ringSize,
+    int encoders, Backpressure backpressure)
+  {
+    if (ringSize < 1)
+      throw new IllegalArgumentException("ring size must be positive: " +
+        ringSize);
+    if (encoders < 1)
+      throw new IllegalArgumentException("encoders must be positive: " +
+        encoders);
+
+    mDirectory = directory;
+    mPrefix = prefix;
+    mBackpressure = backpressure;
+    mRingSize = ringSize;
+    mRing = new Semaphore(ringSize);
+    mPool = new ImagePool(ringSize);
+    mEncoders = Executors.newFixedThreadPool(encoders, new ThreadFactory()
+    {
+      private final AtomicInteger mThreadNumber = new AtomicInteger();
+
+      public Thread newThread(Runnable runnable)
+      {
+        Thread thread = new Thread(runnable, "frame-encoder-" +
+          mThreadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Capture a frame of a component. Where the component is showing, this
+   * should be called on the event dispatch thread.
+   * 
+   * @param component the component to capture
+   * @return true if the frame was captured, false if it was dropped.
+   * @throws InterruptedException if interrupted while waiting for space in
+   *           the ring
+   * @throws IllegalStateException if the recorder is closed
+   */
+
+  public boolean capture(Component component) throws InterruptedException
+  {
+    if (!reserve())
+      return false;
+
+    // should painting fail, the place in the ring and the image are
+    // returned so that later captures do not wait for them forever
+
+    BufferedImage image = null;
+    boolean submitted = false;
+    try
+    {
+      image = mPool.acquire(Math.max(1, component.getWidth()),
+        Math.max(1, component.getHeight()), BufferedImage.TYPE_INT_ARGB);
+      ShapeTools.paintImage(component, image);
+      submit(image);
+      submitted = true;
+    }
+    finally
+    {
+      if (!submitted)
+        abandon(image);
+    }
+    return true;
+  }
+
+  /**
+   * Record an image as a frame. The image is copied, so it may be reused by
+   * the caller as soon as this returns.
+   * 
+   * @param image the image to record
+   * @return true if the frame was recorded, false if it was dropped.
+   * @throws InterruptedException if interrupted while waiting for space in
+   *           the ring
+   * @throws IllegalStateException if the recorder is closed
+   */
+
+  public boolean record(BufferedImage image) throws InterruptedException
+  {
+    if (!reserve())
+      return false;
+
+    BufferedImage copy = null;
+    boolean submitted = false;
+    try
+    {
+      copy = mPool.acquire(image.getWidth(), image.getHeight(),
+        BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g = copy.createGraphics();
+      g.setComposite(AlphaComposite.Src);
+      g.drawImage(image, 0, 0, null);
+      g.dispose();
+      submit(copy);
+      submitted = true;
+    }
+    finally
+    {
+      if (!submitted)
+        abandon(copy);
+    }
+    return true;
+  }
+
+  /**
+   * Wait for all captured frames to be written and stop the encoding
+   * threads. No further frames may be captured, a capture which is under
+   * way when the recorder is closed throws {@link IllegalStateException}.
+   * 
+   * @throws IOException if any frame could not be written, the first such
+   *           failure being reported
+   * @throws InterruptedException if interrupted while waiting
+   */
+
+  public void close() throws IOException, InterruptedException
+  {
+    synchronized (this)
+    {
+      mClosed = true;
+      mEncoders.shutdown();
+    }
+    mEncoders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    mPool.clear();
+    if (mFailure != null)
+      throw mFailure;
+  }
+
+  /**
+   * Return the number of frames captured, including those not yet written.
+   * 
+   * @return the number of frames captured.
+   */
+
+  public int getFrameCount()
+  {
+    return mFrameNumber.get();
+  }
+
+  /**
+   * Return the number of frames dropped because the ring was full.
+   * 
+   * @return the number of dropped frames.
+   */
+
+  public long getDroppedCount()
+  {
+    return mDropped.get();
+  }
+
+  /**
+   * Return the number of frames written.
+   * 
+   * @return the number of frames written.
+   */
+
+  public long getWrittenCount()
+  {
+    return mWritten.get();
+  }
+
+  /**
+   * Return the number of frames which failed to be written.
+   * 
+   * @return the number of failed frames.
+   */
+
+  public long getFailedCount()
+  {
+    return mFailed.get();
+  }
+
+  /**
+   * Return the number of frames waiting to be written.
+   * 
+   * @return the number of frames in the ring.
+   */
+
+  public int getPendingCount()
+  {
+    return mRingSize - mRing.availablePermits();
+  }
+
+  /**
+   * Return the mean time taken to encode and write a frame.
+   * 
+   * @return the mean encode time in milliseconds, or 0 if no frames have
+   *         been written.
+   */
+
+  public double getMeanEncodeMillis()
+  {
+    long frames = mWritten.get() + mFailed.get();
+    return frames == 0 ? 0 : mEncodeNanos.get() / 1e6 / frames;
+  }
+
+  /**
+   * Return the longest time taken to encode and write a frame.
+   * 
+   * @return the maximum encode time in milliseconds.
+   */
+
+  public double getMaxEncodeMillis()
+  {
+    return mMaxEncodeNanos.get() / 1e6;
+  }
+
+  /**
+   * Return the file to which a given frame is written.
+   * 
+   * @param frame the frame number, starting at 0
+   * @return the file for that frame.
+   */
+
+  public File getFrameFile(int frame)
+  {
+    return new File(mDirectory, String.format("%s%06d.png", mPrefix, frame));
+  }
+
+  public String toString()
+  {
+    return String.format(
+      "FrameRecorder[frames=%d, written=%d, dropped=%d, failed=%d, " +
+        "mean encode=%.2fms, max encode=%.2fms]", getFrameCount(),
+      getWrittenCount(), getDroppedCount(), getFailedCount(),
+      getMeanEncodeMillis(), getMaxEncodeMillis());
+  }
+
+  // reserve a place in the ring, according to the backpressure policy
+
+  private boolean reserve() throws InterruptedException
+  {
+    if (mClosed)
+      throw new IllegalStateException("recorder is closed");
+
+    if (mBackpressure == Backpressure.BLOCK)
+      mRing.acquire();
+    else if (!mRing.tryAcquire())
+    {
+      mDropped.incrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  // give back a place in the ring, and the image if there is one, when a
+  // frame can not be submitted
+
+  private void abandon(BufferedImage image)
+  {
+    if (image != null)
+      mPool.release(image);
+    mRing.release();
+  }
+
+  // count a frame which could not be written, keeping the first failure
+
+  private void fail(IOException failure)
+  {
+    mFailed.incrementAndGet();
+    synchronized (this)
+    {
+      if (mFailure == null)
+        mFailure = failure;
+    }
+  }
+
+  // number a frame and hand it to the encoders, synchronized with close so
+  // that frames are never handed to encoders which have been shut down
+
+  private synchronized void submit(final BufferedImage image)
+  {
+    if (mClosed)
+      throw new IllegalStateException("recorder is closed");
+
+    final File file = getFrameFile(mFrameNumber.getAndIncrement());
+    mEncoders.execute(new Runnable()
+    {
+      public void run()
+      {
+        long start = System.nanoTime();
+        try
+        {
+          ImageIO.write(image, "png", file);
+          mWritten.incrementAndGet();
+        }
+        catch (IOException ex)
+        {
+          fail(ex);
+        }
+        catch (RuntimeException ex)
+        {
+          fail(new IOException("failed to write " + file, ex));
+        }
+        finally
+        {
+          long elapsed = System.nanoTime() - start;
+          mEncodeNanos.addAndGet(elapsed);
+          long max;
+          while ((max = mMaxEncodeNanos.get()) < elapsed &&
+            !mMaxEncodeNanos.compareAndSet(max, elapsed))
+            ;
+          mPool.release(image);
+          mRing.release();
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A thread safe, bounded, least recently used cache of glyph outlines and
+ * visual bounds, keyed by font, font render context and glyph code. Outlines
+ * are stored relative to the glyph origin.
+ * 
+ * @author trebor
+ */
+
+public class GlyphCache
+{
+  /** default number of glyphs held by the shared cache */
+
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  /** cache shared by GlyphsOnPath, LabelLayout and LabelPlacer */
+
+  public static final GlyphCache SHARED = new GlyphCache(DEFAULT_CAPACITY);
+
+  private final int mCapacity;
+  private final LruCache<Key, Glyph> mGlyphs;
+
+  /** A cached glyph outline and its visual bounds. */
+
+  public static class Glyph
+  {
+    private final Shape mOutline;
+    private final Rectangle2D mVisualBounds;
+
+    Glyph(Shape outline, Rectangle2D visualBounds)
+    {
+      mOutline = outline;
+      mVisualBounds = visualBounds;
+    }
+
+    /**
+     * Return the glyph outline, relative to the glyph origin. The outline is
+     * shared and must not be modified.
+     * 
+     * @return the outline of the glyph.
+     */
+
+    public Shape getOutline()
+    {
+      return mOutline;
+    }
+
+    /**
+     * Return the visual bounds of the glyph, relative to the glyph origin.
+     * The bounds are shared and must not be modified.
+     * 
+     * @return the visual bounds of the glyph.
+     */
+
+    public Rectangle2D getVisualBounds()
+    {
+      return mVisualBounds;
+    }
+  }
+
+  /** cache key */
+
+  private static class Key
+  {
+    private final Font mFont;
+    private final FontRenderContext mFrc;
+    private final int mCode;
+
+    Key(Font font, FontRenderContext frc, int code)
+    {
+      mFont = font;
+      mFrc = frc;
+      mCode = code;
+    }
+
+    public int hashCode()
+    {
+      return (mFont.hashCode() * 31 + mFrc.hashCode()) * 31 + mCode;
+    }
+
+    public boolean equals(Object other)
+    {
+      if (!(other instanceof Key))
+        return false;
+      Key key = (Key)other;
+      return mCode == key.mCode && mFont.equals(key.mFont) &&
+        mFrc.equals(key.mFrc);
+    }
+  }
+
+  /**
+   * Construct a glyph cache.
+   * 
+   * @param capacity the maximum number of glyphs to hold
+   */
+
+  public GlyphCache(int capacity)
+  {
+    mCapacity = capacity;
+    mGlyphs = new LruCache<Key, Glyph>(capacity);
+  }
+
+  /**
+   * Return the glyph at a given index in a glyph vector. Per glyph
+   * transforms in the glyph vector are not applied to the result.
+   * 
+   * @param gv the glyph vector
+   * @param index the index of the glyph in the glyph vector
+   * @return the cached glyph.
+   */
+
+  public Glyph get(GlyphVector gv, int index)
+  {
+    return get(gv.getFont(), gv.getFontRenderContext(), gv.getGlyphCode(index));
+  }
+
+  /**
+   * Return a glyph, creating and caching it if it is not already present.
+   * 
+   * @param font the font of the glyph
+   * @param frc the render context in which the glyph is measured
+   * @param code the glyph code
+   * @return the cached glyph.
+   */
+
+  public Glyph get(Font font, FontRenderContext frc, int code)
+  {
+    Key key = new Key(font, frc, code);
+    Glyph glyph = mGlyphs.get(key);
+    if (glyph != null)
+      return glyph;
+
+    // create the glyph outside the lock, if another thread races us here
+    // the glyphs are equivalent and either may be kept
+
+    GlyphVector gv = font.createGlyphVector(frc, new int[] {code});
+    glyph = new Glyph(gv.getGlyphOutline(0),
+      gv.getGlyphVisualBounds(0).getBounds2D());
+    mGlyphs.put(key, glyph);
+    return glyph;
+  }
+
+  /** Remove all glyphs from the cache. Counters are not reset. */
+
+  public void clear()
+  {
+    mGlyphs.clear();
+  }
+
+  /**
+   * Return the number of glyphs in the cache.
+   * 
+   * @return the number of glyphs in the cache.
+   */
+
+  public int size()
+  {
+    return mGlyphs.size();
+  }
+
+  /**
+   * Return the maximum number of glyphs held by the cache.
+   * 
+   * @return the capacity of the cache.
+   */
+
+  public int getCapacity()
+  {
+    return mCapacity;
+  }
+
+  /**
+   * Return the number of lookups which found the glyph in the cache.
+   * 
+   * @return the number of cache hits.
+   */
+
+  public long getHits()
+  {
+    return mGlyphs.getHits();
+  }
+
+  /**
+   * Return the number of lookups which had to create the glyph.
+   * 
+   * @return the number of cache misses.
+   */
+
+  public long getMisses()
+  {
+    return mGlyphs.getMisses();
+  }
+
+  /**
+   * Return the number of glyphs removed to keep the cache within capacity.
+   * 
+   * @return the number of evictions.
+   */
+
+  public long getEvictions()
+  {
+    return mGlyphs.getEvictions();
+  }
+
+  public String toString()
+  {
+    return "GlyphCache [size=" + size() + ", capacity=" + mCapacity +
+      ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" +
+      getEvictions() + "]";
+  }
+}
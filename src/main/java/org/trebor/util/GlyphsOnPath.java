@@ -26,11 +26,82 @@ import java.util.*;
 import java.awt.*;
 import java.awt.geom.*;
 import java.awt.font.*;
-import static java.lang.Math.*;
 import static java.awt.geom.AffineTransform.*;
 
 public class GlyphsOnPath
 {
+         // flatness used when a path must be flattened before
+         // glyphs can be placed along it
+
+      public static final double DEFAULT_FLATNESS = 0.5;
+
+         // the transforms which place glyphs of a glyph vector along a
+         // path, held in primitive arrays so that callers may draw
+         // cached glyph outlines without allocating per glyph shapes.
+         // each transform maps a glyph outline at its own origin, as
+         // returned by GlyphCache, to its position on the path
+
+      public static class GlyphTransforms
+      {
+         private final int      mCount;
+         private final int[]    mGlyphIndices;
+         private final int[]    mGlyphCodes;
+         private final double[] mMatrices;
+
+         GlyphTransforms(int count, int[] glyphIndices, int[] glyphCodes,
+                         double[] matrices)
+         {
+            mCount = count;
+            mGlyphIndices = glyphIndices;
+            mGlyphCodes = glyphCodes;
+            mMatrices = matrices;
+         }
+            // number of glyphs placed on the path
+
+         public int getCount()
+         {
+            return mCount;
+         }
+            // index in the glyph vector of each placed glyph
+
+         public int[] getGlyphIndices()
+         {
+            return mGlyphIndices;
+         }
+            // glyph code of each placed glyph
+
+         public int[] getGlyphCodes()
+         {
+            return mGlyphCodes;
+         }
+            // six matrix values for each placed glyph, in the order
+            // used by AffineTransform.getMatrix()
+
+         public double[] getMatrices()
+         {
+            return mMatrices;
+         }
+            // create the transform for a given placed glyph
+
+         public AffineTransform getTransform(int i)
+         {
+            int m = i * 6;
+            return new AffineTransform(
+               mMatrices[m    ], mMatrices[m + 1], mMatrices[m + 2],
+               mMatrices[m + 3], mMatrices[m + 4], mMatrices[m + 5]);
+         }
+      }
+         // receives each glyph as it is placed along a path. the
+         // transform maps the glyph outline, which is relative to the
+         // glyph origin, to its position on the path. neither the
+         // outline nor the transform may be retained or modified, as
+         // they are shared and reused between calls
+
+      public static interface IGlyphHandler
+      {
+         public void glyph(int index, int code, Shape outline,
+                           AffineTransform transform);
+      }
          // map the glyphs in a GlyphVector along the path
          // specified by a PathIterator 
       
@@ -42,133 +113,216 @@ public class GlyphsOnPath
       public static Vector<Shape> glyphsAlongPath(
          GlyphVector gv, PathIterator pi, Justify justification)
       {
-         Vector<Shape>  shapes = new Vector<Shape>();
-         Vector<Line2D> lines  = new Vector<Line2D>();
+         return glyphsAlongPath(gv, createPathTool(pi), justification);
+      }
+         // map the glyphs in a GlyphVector along the path
+         // described by an existing PathTool
 
-            // establish how far down to move the
-            // text to vertically center on the path
+      public static Vector<Shape> glyphsAlongPath(
+         GlyphVector gv, PathTool path, Justify justification)
+      {
+         final Vector<Shape> shapes = new Vector<Shape>(gv.getNumGlyphs());
+
+            // apply a single transform to each cached glyph outline
+
+         glyphsAlongPath(gv, path, justification, new IGlyphHandler()
+         {
+            public void glyph(int index, int code, Shape outline,
+                              AffineTransform transform)
+            {
+               shapes.add(transform.createTransformedShape(outline));
+            }
+         });
+
+         return shapes;
+      }
+         // map the glyphs in a GlyphVector along the path into a single
+         // path, which may be filled with one call. the glyphs are
+         // appended to the provided path, which may be reused by
+         // calling reset() on it between labels
+
+      public static Path2D.Float glyphsAlongPath(
+         GlyphVector gv, PathTool path, Justify justification,
+         final Path2D.Float result)
+      {
+         glyphsAlongPath(gv, path, justification, new IGlyphHandler()
+         {
+            public void glyph(int index, int code, Shape outline,
+                              AffineTransform transform)
+            {
+               result.append(outline.getPathIterator(transform), false);
+            }
+         });
 
-         gv.getFont()
-            .getLineMetrics("", gv.getFontRenderContext());
-         double drop = gv.getOutline().getBounds().getHeight() * 0.4;
-         //- lm.getDescent(); 
+         return result;
+      }
+         // map the glyphs in a GlyphVector along the path, passing
+         // each placed glyph to a handler as it is computed so that no
+         // collection of glyphs is ever created
 
-            // variables used during the iteration of the path
+      public static void glyphsAlongPath(
+         GlyphVector gv, PathTool path, Justify justification,
+         IGlyphHandler handler)
+      {
+         layout(gv, path, justification, GlyphCache.SHARED, handler);
+      }
+         // compute only the transforms which place the glyphs in a
+         // GlyphVector along the path specified by a PathIterator
 
-         double[] choords = new double[6];
-         double   pathLength = 0;
-         Point2D  previouse = null;
-         Point2D  p = null;
-         Point2D  open = null;
+      public static GlyphTransforms glyphTransforms(
+         GlyphVector gv, PathIterator pi, Justify justification)
+      {
+         return glyphTransforms(gv, createPathTool(pi), justification);
+      }
+         // compute only the transforms which place the glyphs in a
+         // GlyphVector along the path described by an existing PathTool
+
+      public static GlyphTransforms glyphTransforms(
+         GlyphVector gv, PathTool path, Justify justification)
+      {
+         int            glyphCount = gv.getNumGlyphs();
+         final int[]    indices    = new int[glyphCount];
+         final int[]    codes      = new int[glyphCount];
+         final double[] matrices   = new double[glyphCount * 6];
+         final double[] matrix     = new double[6];
+         final int[]    count      = new int[1];
 
-         while (!pi.isDone())
+            // collect the transforms into primitive arrays
+
+         glyphsAlongPath(gv, path, justification, new IGlyphHandler()
          {
-            int type = pi.currentSegment(choords);
-            switch (type)
+            public void glyph(int index, int code, Shape outline,
+                              AffineTransform transform)
             {
-               case PathIterator.SEG_MOVETO:
-                  previouse = new Point2D.Double(choords[0], choords[1]);
-                  open = previouse;
-                  break;
-               case PathIterator.SEG_LINETO:
-                  p = new Point2D.Double(choords[0], choords[1]);
-                  lines.add(new Line2D.Double(previouse, p));
-                  pathLength += previouse.distance(p);
-                  previouse = p;
-                  break;
-               case PathIterator.SEG_CLOSE:
-                  lines.add(new Line2D.Double(previouse, open));
-                  pathLength += previouse.distance(open);
-                  previouse = open;
-                  break;
+               transform.getMatrix(matrix);
+               System.arraycopy(matrix, 0, matrices, count[0] * 6, 6);
+               indices[count[0]] = index;
+               codes[count[0]] = code;
+               ++count[0];
             }
-            pi.next();
+         });
+
+         return new GlyphTransforms(count[0], indices, codes, matrices);
+      }
+         // create a path tool from a possibly unflattened path
+
+      static PathTool createPathTool(PathIterator pi)
+      {
+         return new PathTool(pi instanceof FlatteningPathIterator
+            ? (FlatteningPathIterator)pi
+            : new FlatteningPathIterator(pi, DEFAULT_FLATNESS));
+      }
+         // place the glyphs along the path, using glyph outlines and
+         // bounds from the provided glyph cache, and pass each placed
+         // glyph to the handler
+
+      static void layout(GlyphVector gv, PathTool path,
+         Justify justification, GlyphCache cache, IGlyphHandler handler)
+      {
+         int      glyphCount = gv.getNumGlyphs();
+         double[] point      = new double[4];
+         double[] position   = new double[glyphCount * 2];
+         double   pathLength = path.getLength();
+         AffineTransform at  = new AffineTransform();
+         Font font           = gv.getFont();
+         FontRenderContext frc = gv.getFontRenderContext();
+         GlyphCache.Glyph[] glyphs = new GlyphCache.Glyph[glyphCount];
+         Rectangle2D[] bounds = new Rectangle2D[glyphCount];
+         Rectangle2D textBounds = null;
+
+            // establish the bounds of each glyph and of the whole text
+            // from the cached glyphs rather then the glyph vector outline
+
+         float[] positions = gv.getGlyphPositions(0, glyphCount, null);
+         for (int i = 0; i < glyphCount; ++i)
+         {
+            glyphs[i] = cache.get(font, frc, gv.getGlyphCode(i));
+            Rectangle2D glyphBounds = glyphs[i].getVisualBounds();
+            AffineTransform glyphTransform = gv.getGlyphTransform(i);
+            if (glyphTransform != null)
+               glyphBounds = glyphTransform
+                  .createTransformedShape(glyphBounds).getBounds2D();
+            position[i * 2    ] = positions[i * 2    ];
+            position[i * 2 + 1] = positions[i * 2 + 1];
+            bounds[i] = new Rectangle2D.Double(
+               glyphBounds.getX() + position[i * 2],
+               glyphBounds.getY() + position[i * 2 + 1],
+               glyphBounds.getWidth(), glyphBounds.getHeight());
+
+            if (glyphBounds.isEmpty())
+               continue;
+            if (textBounds == null)
+               textBounds = (Rectangle2D)bounds[i].clone();
+            else
+               textBounds.add(bounds[i]);
          }
+            // if nothing is visible there is nothing to place
+
+         if (textBounds == null)
+            return;
+
+            // establish how far down to move the
+            // text to vertically center on the path
+
+         double drop = textBounds.getBounds().getHeight() * 0.4;
+
             // compute the justification
 
          double justify = justification.compute(
-            pathLength, gv.getVisualBounds().getWidth());
+            pathLength, textBounds.getWidth());
 
-            // track the distance along the path
-            // and which line we are on
-
-         double distance = 0;
-         double deltaDist = 0;
-         Iterator<Line2D> lineItr = lines.iterator();
-         Line2D line = null;
-         Point2D p1 = null;
-         Point2D p2 = null;
-         
             // go through the glyphs
          
-         for (int i = 0; i < gv.getNumGlyphs(); ++i)
+         for (int i = 0; i < glyphCount; ++i)
          {
-               // get the shape and bounds of the glyph
+               // get the bounds of the glyph
 
-            Shape shape = gv.getGlyphOutline(i);
-            Rectangle bounds = shape.getBounds();
+            Rectangle glyphBounds = bounds[i].getBounds();
 
                // no need to concern ourselfs with the small stuff
 
-            if (bounds.getWidth() == 0 || bounds.getHeight() == 0)
+            if (bounds[i].isEmpty() ||
+               glyphBounds.getWidth() == 0 || glyphBounds.getHeight() == 0)
                continue;
 
                // compute the glyph position along the path
-            
-            double glyphX = 
-               bounds.getX() +
-               bounds.getWidth() / 2 +
-               justify;
+
+            double center = glyphBounds.getX() + glyphBounds.getWidth() / 2;
+            double glyphX = center + justify;
             
                // if the glyph is out of bounds don't consider it
 
-            if (glyphX < 0 || glyphX > pathLength)
+            if (!path.getPathPoint(glyphX, point))
                continue;
 
-               // while we are not far enough along path
-               // move along to the next line in the path
-
-            while (distance < glyphX && lineItr.hasNext())
-            {
-               line = lineItr.next();
-               p1 = line.getP1();
-               p2 = line.getP2();
-               deltaDist = p1.distance(p2);
-               distance += deltaDist;
-            }
-               // if we are far enough along the path
-            
-            if (distance >= glyphX)
-            {
-                  // compute the difference between the start of the line
-                  // and the position the glyph should be at
+               // compose the transform which moves the glyph center to
+               // the origin, rotates it to the path direction, and moves
+               // it to the point on the path
 
-               double diff = glyphX - (distance - deltaDist);
+            double cos = point[2];
+            double sin = point[3];
+            double tx  = point[0] - cos * center - sin * drop;
+            double ty  = point[1] - sin * center + cos * drop;
 
-                  // compute glyph rotation
+               // then prepend the glyph position, so the transform
+               // applies to the glyph outline at its origin
 
-               double rotation = atan(slope(line)) +
-                  (line.getX1() > line.getX2() ? PI : 0);
+            double px = position[i * 2];
+            double py = position[i * 2 + 1];
+            at.setTransform(cos, sin, -sin, cos,
+               tx + cos * px - sin * py,
+               ty + sin * px + cos * py);
 
-                  // translate the glyph
-               
-               Point2D translation = new Point2D.Double(
-                  p1.getX() - (bounds.getX() 
-                               + bounds.getWidth() / 2 - diff),
-                  p1.getY() + drop);
-               shape = translate(shape, translation);
+               // and any per glyph transform
 
-                  // rotate glyph
+            AffineTransform glyphTransform = gv.getGlyphTransform(i);
+            if (glyphTransform != null)
+               at.concatenate(glyphTransform);
 
-               shape = rotate(shape, rotation, p1);
-               
-                  // add the glyph shape vector for return
+               // hand off the placed glyph
 
-               shapes.add(shape);
-            }
+            handler.glyph(i, gv.getGlyphCode(i), glyphs[i].getOutline(), at);
          }
-
-         return shapes;
       }
          // compute slope of line
       
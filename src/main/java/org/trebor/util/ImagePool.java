@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of buffered images for reuse, so that code which repeatedly renders
+ * into images of the same size, such as component capture or frame
+ * recording, need not allocate and later collect a large image each time.
+ * Images are pooled by width, height and type. The content of an acquired
+ * image is undefined, it may hold whatever was last drawn into it.
+ * <p>
+ * An image pool is thread safe.
+ * 
+ * @author trebor
+ */
+
+public class ImagePool
+{
+  private final int mMaxIdle;
+  private final Map<List<Integer>, Deque<BufferedImage>> mIdle;
+  private int mIdleCount;
+  private long mCreated;
+  private long mReused;
+
+  /**
+   * Construct an image pool.
+   * 
+   * @param maxIdle maximum number of released images to hold for reuse
+   */
+
+  public ImagePool(int maxIdle)
+  {
+    if (maxIdle < 0)
+      throw new IllegalArgumentException("max idle must not be negative: " +
+        maxIdle);
+
+    mMaxIdle = maxIdle;
+    mIdle = new HashMap<List<Integer>, Deque<BufferedImage>>();
+  }
+
+  /**
+   * Acquire an image from the pool, or create one if none of the requested
+   * size and type is available.
+   * 
+   * @param width width of the image
+   * @param height height of the image
+   * @param type type of the image, see {@link BufferedImage#getType()}
+   * @return an image, the content of which is undefined.
+   */
+
+  public synchronized BufferedImage acquire(int width, int height, int type)
+  {
+    Deque<BufferedImage> images = mIdle.get(key(width, height, type));
+    if (images != null && !images.isEmpty())
+    {
+      --mIdleCount;
+      ++mReused;
+      return images.pop();
+    }
+
+    ++mCreated;
+    return new BufferedImage(width, height, type);
+  }
+
+  /**
+   * Release an image back to the pool. If the pool is full the image is
+   * left for the garbage collector. An image must not be used after it is
+   * released.
+   * 
+   * @param image the image to release
+   */
+
+  public synchronized void release(BufferedImage image)
+  {
+    if (mIdleCount >= mMaxIdle)
+      return;
+
+    List<Integer> key =
+      key(image.getWidth(), image.getHeight(), image.getType());
+    Deque<BufferedImage> images = mIdle.get(key);
+    if (images == null)
+    {
+      images = new ArrayDeque<BufferedImage>();
+      mIdle.put(key, images);
+    }
+    images.push(image);
+    ++mIdleCount;
+  }
+
+  /** Discard all idle images. */
+
+  public synchronized void clear()
+  {
+    mIdle.clear();
+    mIdleCount = 0;
+  }
+
+  /**
+   * Return the number of released images held for reuse.
+   * 
+   * @return the number of idle images.
+   */
+
+  public synchronized int getIdleCount()
+  {
+    return mIdleCount;
+  }
+
+  /**
+   * Return the number of images the pool has created.
+   * 
+   * @return the number of images created.
+   */
+
+  public synchronized long getCreated()
+  {
+    return mCreated;
+  }
+
+  /**
+   * Return the number of acquires satisfied by an idle image.
+   * 
+   * @return the number of images reused.
+   */
+
+  public synchronized long getReused()
+  {
+    return mReused;
+  }
+
+  private static List<Integer> key(int width, int height, int type)
+  {
+    return Arrays.asList(width, height, type);
+  }
+}
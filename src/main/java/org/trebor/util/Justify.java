@@ -124,4 +124,20 @@ public class Justify
       ? offset * frame
       : offset);
     }
+
+    public boolean equals(Object other)
+    {
+      if (other == null || other.getClass() != getClass())
+        return false;
+      Justify justify = (Justify)other;
+      return location == justify.location && offset == justify.offset &&
+        percent == justify.percent;
+    }
+
+    public int hashCode()
+    {
+      long bits = Double.doubleToLongBits(offset);
+      return (location.hashCode() * 31 + (int)(bits ^ (bits >>> 32))) * 31 +
+        (percent ? 1 : 0);
+    }
 }
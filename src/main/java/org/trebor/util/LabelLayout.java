@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.trebor.util.GlyphsOnPath.GlyphTransforms;
+
+/**
+ * Lays out many labels along paths in parallel on a fork-join pool. Glyph
+ * vectors for text labels are created with a shared, immutable
+ * {@link FontRenderContext}, so layout needs no {@link java.awt.Graphics}
+ * and may run entirely off the rendering thread. Results are returned in the
+ * same order as the labels.
+ * 
+ * @author trebor
+ */
+
+public class LabelLayout
+{
+  /** render context used when none is specified: antialiased, fractional */
+
+  public static final FontRenderContext DEFAULT_FONT_RENDER_CONTEXT =
+    new FontRenderContext(null, true, true);
+
+  /** number of labels below which a task lays out labels directly */
+
+  static final int THRESHOLD = 32;
+
+  private final ForkJoinPool mPool;
+  private final FontRenderContext mFontRenderContext;
+
+  /** A label to be placed along a path. */
+
+  public static class Label
+  {
+    private final String mText;
+    private final Font mFont;
+    private final GlyphVector mGlyphVector;
+    private final Shape mPath;
+    private final Justify mJustification;
+
+    /**
+     * Construct a label from text, the glyph vector for which will be
+     * created during layout.
+     * 
+     * @param text the text of the label
+     * @param font the font of the label
+     * @param path the path along which to place the label
+     * @param justification the justification of the label along the path
+     */
+
+    public Label(String text, Font font, Shape path, Justify justification)
+    {
+      mText = text;
+      mFont = font;
+      mGlyphVector = null;
+      mPath = path;
+      mJustification = justification;
+    }
+
+    /**
+     * Construct a label from an existing glyph vector.
+     * 
+     * @param gv the glyphs of the label
+     * @param path the path along which to place the label
+     * @param justification the justification of the label along the path
+     */
+
+    public Label(GlyphVector gv, Shape path, Justify justification)
+    {
+      mText = null;
+      mFont = gv.getFont();
+      mGlyphVector = gv;
+      mPath = path;
+      mJustification = justification;
+    }
+
+    /**
+     * Return the glyph vector of this label, creating it in the provided
+     * render context if the label was constructed from text.
+     * 
+     * @param frc render context in which to create the glyph vector
+     * @return the glyph vector of this label.
+     */
+
+    public GlyphVector getGlyphVector(FontRenderContext frc)
+    {
+      return mGlyphVector != null
+        ? mGlyphVector
+        : mFont.createGlyphVector(frc, mText);
+    }
+
+    public Font getFont()
+    {
+      return mFont;
+    }
+
+    public Shape getPath()
+    {
+      return mPath;
+    }
+
+    public Justify getJustification()
+    {
+      return mJustification;
+    }
+  }
+
+  /** The work performed on each label. */
+
+  private static abstract class Layout<R>
+  {
+    abstract R layout(GlyphVector gv, PathTool path, Justify justification);
+  }
+
+  /** Task which lays out a range of labels into a result array. */
+
+  private class LayoutTask<R> extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Label> mLabels;
+    private final Object[] mResults;
+    private final Layout<R> mLayout;
+    private final int mFrom;
+    private final int mTo;
+
+    LayoutTask(List<Label> labels, Object[] results, Layout<R> layout,
+      int from, int to)
+    {
+      mLabels = labels;
+      mResults = results;
+      mLayout = layout;
+      mFrom = from;
+      mTo = to;
+    }
+
+    protected void compute()
+    {
+      if (mTo - mFrom <= THRESHOLD)
+      {
+        for (int i = mFrom; i < mTo; ++i)
+        {
+          Label label = mLabels.get(i);
+          mResults[i] = mLayout.layout(
+            label.getGlyphVector(mFontRenderContext),
+            GlyphsOnPath.createPathTool(label.getPath().getPathIterator(null)),
+            label.getJustification());
+        }
+      }
+      else
+      {
+        int mid = (mFrom + mTo) >>> 1;
+        invokeAll(
+          new LayoutTask<R>(mLabels, mResults, mLayout, mFrom, mid),
+          new LayoutTask<R>(mLabels, mResults, mLayout, mid, mTo));
+      }
+    }
+  }
+
+  /**
+   * Construct a label layout which uses the default render context.
+   * 
+   * @param pool the pool on which to perform layout
+   */
+
+  public LabelLayout(ForkJoinPool pool)
+  {
+    this(pool, DEFAULT_FONT_RENDER_CONTEXT);
+  }
+
+  /**
+   * Construct a label layout.
+   * 
+   * @param pool the pool on which to perform layout
+   * @param frc the render context in which text labels are measured
+   */
+
+  public LabelLayout(ForkJoinPool pool, FontRenderContext frc)
+  {
+    mPool = pool;
+    mFontRenderContext = frc;
+  }
+
+  /**
+   * Return the render context in which text labels are measured.
+   * 
+   * @return the shared render context.
+   */
+
+  public FontRenderContext getFontRenderContext()
+  {
+    return mFontRenderContext;
+  }
+
+  /**
+   * Compute the glyph transforms of many labels in parallel.
+   * 
+   * @param labels the labels to lay out
+   * @return the glyph transforms of each label, in label order.
+   */
+
+  public List<GlyphTransforms> layoutTransforms(List<Label> labels)
+  {
+    return layout(labels, new Layout<GlyphTransforms>()
+    {
+      GlyphTransforms layout(GlyphVector gv, PathTool path,
+        Justify justification)
+      {
+        return GlyphsOnPath.glyphTransforms(gv, path, justification);
+      }
+    });
+  }
+
+  /**
+   * Compute the placed glyph shapes of many labels in parallel.
+   * 
+   * @param labels the labels to lay out
+   * @return the glyph shapes of each label, in label order.
+   */
+
+  public List<Vector<Shape>> layoutShapes(List<Label> labels)
+  {
+    return layout(labels, new Layout<Vector<Shape>>()
+    {
+      Vector<Shape> layout(GlyphVector gv, PathTool path,
+        Justify justification)
+      {
+        return GlyphsOnPath.glyphsAlongPath(gv, path, justification);
+      }
+    });
+  }
+
+  /** lay out labels on the pool, collecting results in label order */
+
+  @SuppressWarnings("unchecked")
+  private <R> List<R> layout(List<Label> labels, Layout<R> layout)
+  {
+    if (!(labels instanceof RandomAccess))
+      labels = new ArrayList<Label>(labels);
+    Object[] results = new Object[labels.size()];
+    mPool.invoke(new LayoutTask<R>(labels, results, layout, 0, labels.size()));
+    return (List<R>)Arrays.asList(results);
+  }
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.trebor.util.GlyphsOnPath.GlyphTransforms;
+import org.trebor.util.LabelLayout.Label;
+
+/**
+ * Places labels along paths while rejecting those whose glyphs would collide
+ * with glyphs already placed. The bounding box of each placed glyph is kept
+ * in a spatial hash grid, so testing a candidate glyph costs near constant
+ * time regardless of how many labels have been placed. A candidate which
+ * collides may be shifted along its path before it is rejected.
+ * <p>
+ * A label placer is not thread safe.
+ * 
+ * @author trebor
+ */
+
+public class LabelPlacer
+{
+  private final double mCellSize;
+  private final double mPadding;
+  private final FontRenderContext mFontRenderContext;
+  private final Map<Long, List<Rectangle2D>> mGrid;
+  private double[] mShifts;
+  private int mGlyphCount;
+
+  /** A label with a placement priority, higher priorities place first. */
+
+  public static class Candidate
+  {
+    private final Label mLabel;
+    private final double mPriority;
+
+    public Candidate(Label label, double priority)
+    {
+      mLabel = label;
+      mPriority = priority;
+    }
+
+    public Label getLabel()
+    {
+      return mLabel;
+    }
+
+    public double getPriority()
+    {
+      return mPriority;
+    }
+  }
+
+  /** A successfully placed label. */
+
+  public static class Placement
+  {
+    private final Label mLabel;
+    private final GlyphTransforms mTransforms;
+    private final double mShift;
+
+    Placement(Label label, GlyphTransforms transforms, double shift)
+    {
+      mLabel = label;
+      mTransforms = transforms;
+      mShift = shift;
+    }
+
+    public Label getLabel()
+    {
+      return mLabel;
+    }
+
+    /**
+     * Return the transforms which place the label glyphs, see
+     * {@link GlyphsOnPath#glyphTransforms(GlyphVector, PathTool, Justify)}.
+     * 
+     * @return the glyph transforms of the placed label.
+     */
+
+    public GlyphTransforms getTransforms()
+    {
+      return mTransforms;
+    }
+
+    /**
+     * Return the distance along the path the label was shifted from its
+     * requested justification to avoid a collision.
+     * 
+     * @return the shift applied to the label.
+     */
+
+    public double getShift()
+    {
+      return mShift;
+    }
+  }
+
+  /**
+   * Construct a label placer which uses the default render context.
+   * 
+   * @param cellSize the size of grid cells, roughly that of a glyph
+   * @param padding space to keep clear around each glyph
+   */
+
+  public LabelPlacer(double cellSize, double padding)
+  {
+    this(cellSize, padding, LabelLayout.DEFAULT_FONT_RENDER_CONTEXT);
+  }
+
+  /**
+   * Construct a label placer.
+   * 
+   * @param cellSize the size of grid cells, roughly that of a glyph
+   * @param padding space to keep clear around each glyph
+   * @param frc the render context in which text labels are measured
+   */
+
+  public LabelPlacer(double cellSize, double padding, FontRenderContext frc)
+  {
+    if (cellSize <= 0)
+      throw new IllegalArgumentException("cell size must be positive: " +
+        cellSize);
+
+    mCellSize = cellSize;
+    mPadding = padding;
+    mFontRenderContext = frc;
+    mGrid = new HashMap<Long, List<Rectangle2D>>();
+    mShifts = new double[0];
+  }
+
+  /**
+   * Set the distances along the path by which a colliding label is shifted,
+   * in order, before it is rejected.
+   * 
+   * @param shifts the shifts to try
+   */
+
+  public void setShifts(double... shifts)
+  {
+    mShifts = shifts.clone();
+  }
+
+  /**
+   * Place a label, if it can be placed without colliding with labels
+   * already placed.
+   * 
+   * @param label the label to place
+   * @return the placement of the label, or null if it could not be placed.
+   */
+
+  public Placement place(Label label)
+  {
+    GlyphVector gv = label.getGlyphVector(mFontRenderContext);
+    PathTool path =
+      GlyphsOnPath.createPathTool(label.getPath().getPathIterator(null));
+
+    // try the requested justification, then each of the shifts
+
+    for (int attempt = -1; attempt < mShifts.length; ++attempt)
+    {
+      double shift = attempt < 0 ? 0 : mShifts[attempt];
+      GlyphTransforms transforms = GlyphsOnPath.glyphTransforms(gv, path,
+        shift(label.getJustification(), shift));
+
+      // a shift which moves the label entirely off its path is skipped
+
+      if (transforms.getCount() == 0)
+        continue;
+
+      Rectangle2D[] boxes = glyphBoxes(gv, transforms);
+      if (!collides(boxes))
+      {
+        for (Rectangle2D box: boxes)
+          insert(box);
+        return new Placement(label, transforms, shift);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Place labels in order of descending priority. Labels of equal priority
+   * are placed in the order provided.
+   * 
+   * @param candidates the labels to place
+   * @return the placement of each candidate, in the order provided, with
+   *         null for those which could not be placed.
+   */
+
+  public List<Placement> placeAll(final List<Candidate> candidates)
+  {
+    List<Integer> order = new ArrayList<Integer>(candidates.size());
+    for (int i = 0; i < candidates.size(); ++i)
+      order.add(i);
+
+    // sort is stable so equal priorities keep their order
+
+    Collections.sort(order, new Comparator<Integer>()
+    {
+      public int compare(Integer a, Integer b)
+      {
+        return Double.compare(candidates.get(b).getPriority(),
+          candidates.get(a).getPriority());
+      }
+    });
+
+    List<Placement> placements = new ArrayList<Placement>(
+      Collections.<Placement>nCopies(candidates.size(), null));
+    for (int i: order)
+      placements.set(i, place(candidates.get(i).getLabel()));
+    return placements;
+  }
+
+  /**
+   * Test if a box collides with any placed glyph.
+   * 
+   * @param box the box to test
+   * @return true if the box intersects a placed glyph.
+   */
+
+  public boolean collides(Rectangle2D box)
+  {
+    int x1 = cell(box.getMinX());
+    int x2 = cell(box.getMaxX());
+    int y1 = cell(box.getMinY());
+    int y2 = cell(box.getMaxY());
+    for (int x = x1; x <= x2; ++x)
+      for (int y = y1; y <= y2; ++y)
+      {
+        List<Rectangle2D> boxes = mGrid.get(key(x, y));
+        if (boxes != null)
+          for (Rectangle2D other: boxes)
+            if (other.intersects(box))
+              return true;
+      }
+    return false;
+  }
+
+  /** Remove all placed glyphs. */
+
+  public void clear()
+  {
+    mGrid.clear();
+    mGlyphCount = 0;
+  }
+
+  /**
+   * Return the number of glyphs which have been placed.
+   * 
+   * @return the number of placed glyphs.
+   */
+
+  public int getGlyphCount()
+  {
+    return mGlyphCount;
+  }
+
+  // test a set of glyph boxes against placed glyphs
+
+  private boolean collides(Rectangle2D[] boxes)
+  {
+    for (Rectangle2D box: boxes)
+      if (collides(box))
+        return true;
+    return false;
+  }
+
+  // add a glyph box to each cell it overlaps
+
+  private void insert(Rectangle2D box)
+  {
+    int x1 = cell(box.getMinX());
+    int x2 = cell(box.getMaxX());
+    int y1 = cell(box.getMinY());
+    int y2 = cell(box.getMaxY());
+    for (int x = x1; x <= x2; ++x)
+      for (int y = y1; y <= y2; ++y)
+      {
+        Long key = key(x, y);
+        List<Rectangle2D> boxes = mGrid.get(key);
+        if (boxes == null)
+        {
+          boxes = new ArrayList<Rectangle2D>(4);
+          mGrid.put(key, boxes);
+        }
+        boxes.add(box);
+      }
+    ++mGlyphCount;
+  }
+
+  // compute the padded, axis aligned bounding box of each placed glyph
+
+  private Rectangle2D[] glyphBoxes(GlyphVector gv, GlyphTransforms transforms)
+  {
+    Rectangle2D[] boxes = new Rectangle2D[transforms.getCount()];
+    int[] codes = transforms.getGlyphCodes();
+    double[] matrices = transforms.getMatrices();
+    for (int i = 0; i < boxes.length; ++i)
+    {
+      Rectangle2D bounds = GlyphCache.SHARED.get(gv.getFont(),
+        gv.getFontRenderContext(), codes[i]).getVisualBounds();
+      int m = i * 6;
+      double minX = Double.POSITIVE_INFINITY;
+      double minY = Double.POSITIVE_INFINITY;
+      double maxX = Double.NEGATIVE_INFINITY;
+      double maxY = Double.NEGATIVE_INFINITY;
+      for (int corner = 0; corner < 4; ++corner)
+      {
+        double x = (corner & 1) == 0 ? bounds.getMinX() : bounds.getMaxX();
+        double y = (corner & 2) == 0 ? bounds.getMinY() : bounds.getMaxY();
+        double tx = matrices[m] * x + matrices[m + 2] * y + matrices[m + 4];
+        double ty = matrices[m + 1] * x + matrices[m + 3] * y + matrices[m + 5];
+        minX = Math.min(minX, tx);
+        minY = Math.min(minY, ty);
+        maxX = Math.max(maxX, tx);
+        maxY = Math.max(maxY, ty);
+      }
+      boxes[i] = new Rectangle2D.Double(minX - mPadding, minY - mPadding,
+        maxX - minX + 2 * mPadding, maxY - minY + 2 * mPadding);
+    }
+    return boxes;
+  }
+
+  // create a justification shifted some distance along the path
+
+  static Justify shift(Justify justification, double shift)
+  {
+    return shift == 0
+      ? justification
+      : new ShiftedJustify(justification, shift);
+  }
+
+  // a justification shifted some distance along the path, the shift is
+  // part of its identity so that it may be used as a cache key
+
+  private static class ShiftedJustify extends Justify
+  {
+    private final double mShift;
+
+    ShiftedJustify(Justify justification, double shift)
+    {
+      super(justification.location, justification.offset,
+        justification.percent);
+      mShift = shift;
+    }
+
+    public double compute(double frame, double content)
+    {
+      return super.compute(frame, content) + mShift;
+    }
+
+    public boolean equals(Object other)
+    {
+      return super.equals(other) && ((ShiftedJustify)other).mShift == mShift;
+    }
+
+    public int hashCode()
+    {
+      long bits = Double.doubleToLongBits(mShift);
+      return super.hashCode() * 31 + (int)(bits ^ (bits >>> 32));
+    }
+  }
+
+  private int cell(double value)
+  {
+    return (int)Math.floor(value / mCellSize);
+  }
+
+  private static Long key(int x, int y)
+  {
+    return ((long)x << 32) | (y & 0xffffffffL);
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe, bounded, least recently used cache which counts hits,
+ * misses and evictions. By default the capacity is a number of entries;
+ * subclasses may override {@link #weigh(Object, Object)} to bound the cache
+ * by some other measure, such as bytes.
+ * 
+ * @author trebor
+ */
+
+public class LruCache<K, V>
+{
+  private final long mCapacity;
+  private final LinkedHashMap<K, V> mEntries;
+  private final AtomicLong mHits;
+  private final AtomicLong mMisses;
+  private final AtomicLong mEvictions;
+  private long mWeight;
+
+  /**
+   * Construct a cache.
+   * 
+   * @param capacity the maximum total weight of the entries in the cache
+   */
+
+  public LruCache(long capacity)
+  {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive: " +
+        capacity);
+
+    mCapacity = capacity;
+    mEntries = new LinkedHashMap<K, V>(16, 0.75f, true);
+    mHits = new AtomicLong();
+    mMisses = new AtomicLong();
+    mEvictions = new AtomicLong();
+  }
+
+  /**
+   * Return the weight of an entry, which is 1 unless overridden.
+   * 
+   * @param key the key of the entry
+   * @param value the value of the entry
+   * @return the weight of the entry.
+   */
+
+  protected long weigh(K key, V value)
+  {
+    return 1;
+  }
+
+  /**
+   * Called when an entry is evicted or removed, which does nothing unless
+   * overridden. This is called while the cache is locked.
+   * 
+   * @param key the key of the entry
+   * @param value the value of the entry
+   */
+
+  protected void removed(K key, V value)
+  {
+  }
+
+  /**
+   * Return a value from the cache, counting a hit or a miss.
+   * 
+   * @param key the key of the value
+   * @return the value, or null if it is not in the cache.
+   */
+
+  public V get(K key)
+  {
+    V value;
+    synchronized (mEntries)
+    {
+      value = mEntries.get(key);
+    }
+    if (value == null)
+      mMisses.incrementAndGet();
+    else
+      mHits.incrementAndGet();
+    return value;
+  }
+
+  /**
+   * Add a value to the cache, evicting least recently used entries as
+   * needed to keep the cache within capacity. An entry heavier then the
+   * capacity of the cache is not retained.
+   * 
+   * @param key the key of the value
+   * @param value the value
+   */
+
+  public void put(K key, V value)
+  {
+    synchronized (mEntries)
+    {
+      V old = mEntries.put(key, value);
+      if (old != null)
+      {
+        mWeight -= weigh(key, old);
+        if (old != value)
+          removed(key, old);
+      }
+      mWeight += weigh(key, value);
+
+      // evict from the least recently used end
+
+      Iterator<Map.Entry<K, V>> i = mEntries.entrySet().iterator();
+      while (mWeight > mCapacity && i.hasNext())
+      {
+        Map.Entry<K, V> eldest = i.next();
+        i.remove();
+        mWeight -= weigh(eldest.getKey(), eldest.getValue());
+        mEvictions.incrementAndGet();
+        removed(eldest.getKey(), eldest.getValue());
+      }
+    }
+  }
+
+  /**
+   * Remove a value from the cache.
+   * 
+   * @param key the key of the value
+   * @return the removed value, or null if it was not in the cache.
+   */
+
+  public V remove(K key)
+  {
+    synchronized (mEntries)
+    {
+      V value = mEntries.remove(key);
+      if (value != null)
+      {
+        mWeight -= weigh(key, value);
+        removed(key, value);
+      }
+      return value;
+    }
+  }
+
+  /** Remove all values from the cache. Counters are not reset. */
+
+  public void clear()
+  {
+    synchronized (mEntries)
+    {
+      for (Map.Entry<K, V> entry: mEntries.entrySet())
+        removed(entry.getKey(), entry.getValue());
+      mEntries.clear();
+      mWeight = 0;
+    }
+  }
+
+  /**
+   * Return the number of entries in the cache.
+   * 
+   * @return the number of entries in the cache.
+   */
+
+  public int size()
+  {
+    synchronized (mEntries)
+    {
+      return mEntries.size();
+    }
+  }
+
+  /**
+   * Return the total weight of the entries in the cache.
+   * 
+   * @return the weight of the cache.
+   */
+
+  public long getWeight()
+  {
+    synchronized (mEntries)
+    {
+      return mWeight;
+    }
+  }
+
+  /**
+   * Return the maximum total weight of the entries in the cache.
+   * 
+   * @return the capacity of the cache.
+   */
+
+  public long getCapacity()
+  {
+    return mCapacity;
+  }
+
+  /**
+   * Return the number of lookups which found a value in the cache.
+   * 
+   * @return the number of cache hits.
+   */
+
+  public long getHits()
+  {
+    return mHits.get();
+  }
+
+  /**
+   * Return the number of lookups which did not find a value in the cache.
+   * 
+   * @return the number of cache misses.
+   */
+
+  public long getMisses()
+  {
+    return mMisses.get();
+  }
+
+  /**
+   * Return the number of entries removed to keep the cache within capacity.
+   * 
+   * @return the number of evictions.
+   */
+
+  public long getEvictions()
+  {
+    return mEvictions.get();
+  }
+
+  /**
+   * Return the fraction of lookups which found a value in the cache.
+   * 
+   * @return the hit rate, or zero if there have been no lookups.
+   */
+
+  public double getHitRate()
+  {
+    long hits = getHits();
+    long total = hits + getMisses();
+    return total == 0 ? 0 : (double)hits / total;
+  }
+
+  public String toString()
+  {
+    return getClass().getSimpleName() + " [size=" + size() + ", weight=" +
+      getWeight() + ", capacity=" + mCapacity + ", hits=" + getHits() +
+      ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+  }
+}
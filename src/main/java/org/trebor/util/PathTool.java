@@ -2,16 +2,45 @@ package org.trebor.util;
 
 import java.awt.Shape;
 import java.awt.geom.FlatteningPathIterator;
-import java.awt.geom.Line2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class PathTool
 {
-  private final NavigableMap<Double, Segment> mLines;
+  /**
+   * Number of segments processed as a unit when computing lengths and
+   * extents. This is fixed (rather then derived from the number of threads)
+   * so that the sequential and parallel builds perform exactly the same
+   * floating point operations and thus produce identical indices.
+   */
+
+  static final int CHUNK_SIZE = 8192;
+
+  /** segment end points, stored as x1, y1, x2, y2 for each segment */
+
+  private final double[] mCoords;
+
+  /** length of each segment */
+
+  private final double[] mLengths;
+
+  /** extent down the path at which each segment starts */
+
+  private final double[] mExtents;
+
+  /** number of segments in the path */
+
+  private final int mSegmentCount;
+
+  /** total length of the path */
+
   private final double mLength;
 
   public class PathPoint extends Point2D.Double
@@ -30,66 +59,214 @@ public class PathTool
       return mAngle;
     }
   }
-  
-  private class Segment
-  {
-    final Line2D mLine;
-    final double mLength;
-    
-    public Segment(Point2D p1, Point2D p2)
-    {
-      mLength = p1.distance(p2);
-      mLine = new Line2D.Double(p1, p2);
-    }
-  }
 
   public PathTool(Shape shape, double flatness)
   {
     this((FlatteningPathIterator)shape.getPathIterator(null, flatness));
   }
+
+  /**
+   * Construct a path tool, using the provided executor to compute segment
+   * lengths and extents in parallel. The resulting index is identical to
+   * that produced by the sequential constructor.
+   * 
+   * @param shape the shape to build the path from
+   * @param flatness the flatness used to flatten curves in the shape
+   * @param executor the executor on which to compute the index
+   */
+
+  public PathTool(Shape shape, double flatness, ExecutorService executor)
+  {
+    this((FlatteningPathIterator)shape.getPathIterator(null, flatness),
+      executor);
+  }
   
   public PathTool(FlatteningPathIterator pi)
   {
-    mLines = new TreeMap<Double, Segment>();
+    this(pi, null);
+  }
+
+  /**
+   * Construct a path tool from a flattened path. If an executor is provided
+   * the segment lengths and extents are computed in parallel on it, otherwise
+   * they are computed on the calling thread.
+   * 
+   * @param pi the flattened path iterator
+   * @param executor the executor on which to compute the index, or null
+   */
+
+  public PathTool(FlatteningPathIterator pi, ExecutorService executor)
+  {
+    // collect the raw segment coordinates, this is inherently sequential
+
+    mCoords = collectSegments(pi);
+    mSegmentCount = mCoords.length / 4;
+    mLengths = new double[mSegmentCount];
+    mExtents = new double[mSegmentCount];
+
+    // compute the segment lengths and the total of each chunk
+
+    int chunkCount = (mSegmentCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    final double[] totals = new double[chunkCount];
+    if (executor == null)
+    {
+      for (int chunk = 0; chunk < chunkCount; ++chunk)
+        totals[chunk] = computeLengths(chunk);
+    }
+    else
+    {
+      Collection<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      for (int i = 0; i < chunkCount; ++i)
+      {
+        final int chunk = i;
+        tasks.add(new Callable<Object>()
+        {
+          public Object call()
+          {
+            totals[chunk] = computeLengths(chunk);
+            return null;
+          }
+        });
+      }
+      invokeAll(executor, tasks);
+    }
+
+    // convert the chunk totals into chunk offsets (exclusive prefix sum)
+
+    final double[] offsets = new double[chunkCount];
+    double length = 0;
+    for (int chunk = 0; chunk < chunkCount; ++chunk)
+    {
+      offsets[chunk] = length;
+      length += totals[chunk];
+    }
+
+    // compute the extent of each segment within each chunk
+
+    if (executor == null)
+    {
+      for (int chunk = 0; chunk < chunkCount; ++chunk)
+        computeExtents(chunk, offsets[chunk]);
+    }
+    else
+    {
+      Collection<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      for (int i = 0; i < chunkCount; ++i)
+      {
+        final int chunk = i;
+        tasks.add(new Callable<Object>()
+        {
+          public Object call()
+          {
+            computeExtents(chunk, offsets[chunk]);
+            return null;
+          }
+        });
+      }
+      invokeAll(executor, tasks);
+    }
+
+    // fix the total path length
     
+    this.mLength = length;
+  }
+
+  /** collect the coordinates of each line segment in a flattened path */
+
+  private static double[] collectSegments(FlatteningPathIterator pi)
+  {
+    double[] segments = new double[4 * 64];
+    int size = 0;
+
     // variables used during the iteration along the path
 
-    double length = 0;
-    Point2D previouse = null;
-    Point2D p = null;
-    Point2D open = null;
+    double previousX = 0;
+    double previousY = 0;
+    double openX = 0;
+    double openY = 0;
     double[] choords = new double[6];
 
-    // iterate along the path to compute length and collect line segments
+    // iterate along the path to collect line segments
 
     while (!pi.isDone())
     {
-      switch (pi.currentSegment(choords))
+      int type = pi.currentSegment(choords);
+      if (type == PathIterator.SEG_MOVETO)
+      {
+        previousX = openX = choords[0];
+        previousY = openY = choords[1];
+      }
+      else
       {
-      case PathIterator.SEG_MOVETO:
-        previouse = new Point2D.Double(choords[0], choords[1]);
-        open = previouse;
-        break;
-      case PathIterator.SEG_LINETO:
-        p = new Point2D.Double(choords[0], choords[1]);
-        mLines.put(length, new Segment(previouse, p));
-        length += previouse.distance(p);
-        previouse = p;
-        break;
-      case PathIterator.SEG_CLOSE:
-        mLines.put(length, new Segment(previouse, open));
-        length += previouse.distance(open);
-        previouse = open;
-        break;
-      default:
-        throw new Error("Unexpected segment type.");
+        if (type == PathIterator.SEG_CLOSE)
+        {
+          choords[0] = openX;
+          choords[1] = openY;
+        }
+        else if (type != PathIterator.SEG_LINETO)
+          throw new Error("Unexpected segment type.");
+
+        if (size + 4 > segments.length)
+          segments = Arrays.copyOf(segments, segments.length * 2);
+        segments[size++] = previousX;
+        segments[size++] = previousY;
+        segments[size++] = previousX = choords[0];
+        segments[size++] = previousY = choords[1];
       }
       pi.next();
     }
-    
-    // fix the total path length
-    
-    this.mLength = length;
+
+    return Arrays.copyOf(segments, size);
+  }
+
+  /** compute segment lengths of a chunk and return the chunk length */
+
+  private double computeLengths(int chunk)
+  {
+    double total = 0;
+    int end = Math.min(mSegmentCount, (chunk + 1) * CHUNK_SIZE);
+    for (int i = chunk * CHUNK_SIZE; i < end; ++i)
+    {
+      int c = i * 4;
+      mLengths[i] = Point2D.distance(
+        mCoords[c], mCoords[c + 1], mCoords[c + 2], mCoords[c + 3]);
+      total += mLengths[i];
+    }
+    return total;
+  }
+
+  /** compute the extents of the segments in a chunk */
+
+  private void computeExtents(int chunk, double offset)
+  {
+    double extent = offset;
+    int end = Math.min(mSegmentCount, (chunk + 1) * CHUNK_SIZE);
+    for (int i = chunk * CHUNK_SIZE; i < end; ++i)
+    {
+      mExtents[i] = extent;
+      extent += mLengths[i];
+    }
+  }
+
+  /** run tasks on an executor and wait for them all to complete */
+
+  private static void invokeAll(ExecutorService executor,
+    Collection<Callable<Object>> tasks)
+  {
+    try
+    {
+      for (Future<Object> future: executor.invokeAll(tasks))
+        future.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new Error("Interrupted while building path index.", e);
+    }
+    catch (ExecutionException e)
+    {
+      throw new Error("Unable to build path index.", e.getCause());
+    }
   }
 
   /**
@@ -125,6 +302,29 @@ public class PathTool
     return mLength;
   }
 
+  /**
+   * Return the number of line segments in the flattened path.
+   * 
+   * @return the number of line segments in the path.
+   */
+
+  public int getSegmentCount()
+  {
+    return mSegmentCount;
+  }
+
+  /**
+   * Return the extent down the path at which a given segment starts.
+   * 
+   * @param segment the index of the segment
+   * @return the extent at which the segment starts.
+   */
+
+  public double getSegmentExtent(int segment)
+  {
+    return mExtents[segment];
+  }
+
   /**
    * Compute the position and angle of a point on given path.
    * 
@@ -137,24 +337,94 @@ public class PathTool
   {
     // if negative or beyond the length of the path, return null
 
-    if (extent < 0 || extent > mLength)
+    if (extent < 0 || extent > mLength || mSegmentCount == 0)
       return null;
 
-    Map.Entry<Double, Segment> segment = mLines.floorEntry(extent);
+    int segment = findSegment(extent);
+    int c = segment * 4;
 
     // compute the percentage down the segment to travel
 
-    double segmentPercent =
-      (extent - segment.getKey()) / segment.getValue().mLength;
+    double segmentPercent = mLengths[segment] == 0
+      ? 0
+      : (extent - mExtents[segment]) / mLengths[segment];
     
     // establish the start end end points of the path
     
-    Point2D p1 = segment.getValue().mLine.getP1();
-    Point2D p2 = segment.getValue().mLine.getP2();
+    double x1 = mCoords[c];
+    double y1 = mCoords[c + 1];
+    double x2 = mCoords[c + 2];
+    double y2 = mCoords[c + 3];
 
     // return path point at provided extent
     
-    return new PathPoint(p1.getX() + (p2.getX() - p1.getX()) * segmentPercent,
-      p1.getY() + (p2.getY() - p1.getY()) * segmentPercent, new Angle(p1, p2));
+    return new PathPoint(x1 + (x2 - x1) * segmentPercent,
+      y1 + (y2 - y1) * segmentPercent, new Angle(x2 - x1, y2 - y1));
+  }
+
+  /**
+   * Compute the position and direction of a point on the path without
+   * allocating any objects. The provided array is filled with the x and y
+   * coordinates of the point followed by the unit direction vector (dx, dy)
+   * of the segment on which the point lies.
+   * 
+   * @param extent the extent down the path
+   * @param point an array of at least four elements to receive the result
+   * @return true if the point was computed, false if the extent is beyond
+   *         that of the path.
+   */
+
+  public boolean getPathPoint(double extent, double[] point)
+  {
+    if (extent < 0 || extent > mLength || mSegmentCount == 0)
+      return false;
+
+    int segment = findSegment(extent);
+    int c = segment * 4;
+    double length = mLengths[segment];
+    double dx = mCoords[c + 2] - mCoords[c];
+    double dy = mCoords[c + 3] - mCoords[c + 1];
+
+    // fill in the position and direction, zero length segments point along
+    // the x axis as they would for an angle
+
+    if (length == 0)
+    {
+      point[0] = mCoords[c];
+      point[1] = mCoords[c + 1];
+      point[2] = 1;
+      point[3] = 0;
+    }
+    else
+    {
+      double segmentPercent = (extent - mExtents[segment]) / length;
+      point[0] = mCoords[c] + dx * segmentPercent;
+      point[1] = mCoords[c + 1] + dy * segmentPercent;
+      point[2] = dx / length;
+      point[3] = dy / length;
+    }
+
+    return true;
+  }
+
+  /**
+   * Find the last segment which starts at or before the given extent. When
+   * several segments start at the same extent (zero length segments) the
+   * last of them is chosen.
+   */
+
+  private int findSegment(double extent)
+  {
+    int low = 0;
+    int high = mSegmentCount - 1;
+    while (low < high)
+    {
+      int mid = (low + high + 1) >>> 1;
+      if (mExtents[mid] <= extent)
+        low = mid;
+      else
+        high = mid - 1;
+    }
+    return low;
   }
-}
\ No newline at end of file
+}
@@ -22,13 +22,20 @@
 
 package org.trebor.util;
 
+import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.FontMetrics;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
 
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Vector;
 
 import static java.lang.Math.*;
@@ -38,6 +45,159 @@ import static java.lang.Math.*;
 
 public class ScaleText
 {
+    /** number of fitted messages held by the fit cache */
+
+    public static final int FIT_CACHE_CAPACITY = 1024;
+
+    /** fitted messages by font, render context, message and box size */
+
+    private static final LruCache<FitKey, Fit> FIT_CACHE =
+      new LruCache<FitKey, Fit>(FIT_CACHE_CAPACITY);
+
+    /** bytes of rendered message images held by the sprite cache */
+
+    public static final long SPRITE_CACHE_BYTES = 32 * 1024 * 1024;
+
+    /** rendered message images, bounded by their size in bytes */
+
+    private static final LruCache<SpriteKey, Sprite> SPRITE_CACHE =
+      new LruCache<SpriteKey, Sprite>(SPRITE_CACHE_BYTES)
+      {
+        protected long weigh(SpriteKey key, Sprite sprite)
+        {
+          return 4L * sprite.mImage.getWidth() * sprite.mImage.getHeight();
+        }
+
+        protected void removed(SpriteKey key, Sprite sprite)
+        {
+          sprite.mImage.flush();
+        }
+      };
+
+    /** A font scaled to fit a message into a box, with the bounds of the
+     * message at that font.  Fits are shared and must not be modified. */
+
+    public static class Fit
+    {
+      private final Font mFont;
+      private final Rectangle2D mMessageBounds;
+      private final Rectangle2D[] mLineBounds;
+
+      Fit(Font font, Rectangle2D messageBounds, Rectangle2D[] lineBounds)
+      {
+        mFont = font;
+        mMessageBounds = messageBounds;
+        mLineBounds = lineBounds;
+      }
+
+      /** @return the font scaled to fit the message into the box. */
+
+      public Font getFont()
+      {
+        return mFont;
+      }
+
+      /** @return the bounds of the whole message. */
+
+      public Rectangle2D getMessageBounds()
+      {
+        return mMessageBounds;
+      }
+
+      /** @param line index of a line in the message
+       * @return the bounds of that line. */
+
+      public Rectangle2D getLineBounds(int line)
+      {
+        return mLineBounds[line];
+      }
+    }
+
+    /** rendered message image and the margin around the box */
+
+    private static class Sprite
+    {
+      private final BufferedImage mImage;
+      private final int mMargin;
+
+      Sprite(BufferedImage image, int margin)
+      {
+        mImage = image;
+        mMargin = margin;
+      }
+    }
+
+    /** sprite cache key, every input which affects the rendered pixels */
+
+    private static class SpriteKey
+    {
+      private final List<Object> mInputs;
+      private final double mX;
+      private final double mY;
+
+      SpriteKey(Fit fit, Color color, FontRenderContext frc,
+        RenderingHints hints, String[] lines, double x, double y,
+        double width, double height, Justify horizontal, Justify vertical)
+      {
+        mX = x;
+        mY = y;
+        mInputs = Arrays.<Object>asList(fit.getFont(), color, frc, hints,
+          Arrays.asList(lines.clone()), x, y, width, height, horizontal,
+          vertical);
+      }
+
+      public int hashCode()
+      {
+        return mInputs.hashCode();
+      }
+
+      public boolean equals(Object other)
+      {
+        return other instanceof SpriteKey &&
+          mInputs.equals(((SpriteKey)other).mInputs);
+      }
+    }
+
+    /** fit cache key */
+
+    private static class FitKey
+    {
+      private final Font mFont;
+      private final FontRenderContext mFrc;
+      private final String[] mLines;
+      private final double mWidth;
+      private final double mHeight;
+      private final int mHash;
+
+      FitKey(Font font, FontRenderContext frc, String[] lines,
+        Rectangle2D box)
+      {
+        mFont = font;
+        mFrc = frc;
+        mLines = lines.clone();
+        mWidth = box.getWidth();
+        mHeight = box.getHeight();
+        mHash = Arrays.asList(font, frc, mWidth, mHeight).hashCode() * 31 +
+          Arrays.hashCode(mLines);
+      }
+
+      public int hashCode()
+      {
+        return mHash;
+      }
+
+      public boolean equals(Object other)
+      {
+        if (!(other instanceof FitKey))
+          return false;
+        FitKey key = (FitKey)other;
+        return mHash == key.mHash && mWidth == key.mWidth &&
+          mHeight == key.mHeight && mFont.equals(key.mFont) &&
+          mFrc.equals(key.mFrc) &&
+          Arrays.equals(mLines, key.mLines);
+      }
+    }
+
     /** Paint provided message onto the provided box.
      *
      * @param g graphic on which to draw message
@@ -51,20 +211,106 @@ public class ScaleText
       Graphics2D g, String[] lines, Rectangle2D box, 
       Justify horizontal, Justify vertical)
     {
-      // scale the font to fit the message
+      // scale the font to fit the message and establish the bounding box
+      // of the entire message and for each line, reusing a previous fit of
+      // the same message if there is one
+
+      Fit fit = fitMessage(g, lines, box);
+      g.setFont(fit.getFont());
+      drawLines(g, lines, fit, box.getX(), box.getY(), box.getWidth(),
+        box.getHeight(), horizontal, vertical);
+    }
 
-      scaleFont(g, lines, box);
+    /** Paint provided message onto the provided box, by drawing a
+     * previously rendered image of the message if there is one, or
+     * by rendering and caching such an image if there is not.  The
+     * image is rendered with the font, color and rendering hints of
+     * the graphic; if the graphic is scaled or rotated, or is painting
+     * with something other than a plain color, the message is drawn
+     * directly as by {@link #drawMessage}.
+     *
+     * @param g graphic on which to draw message
+     * @param lines the message to draw
+     * @param box box to paint message into
+     * @param horizontal horizontal justification
+     * @param vertical vertical justification
+     */
 
-      // establish the bounding box of the entire message  and for each
-      // line
+    public static void drawCachedMessage(
+      Graphics2D g, String[] lines, Rectangle2D box,
+      Justify horizontal, Justify vertical)
+    {
+      // images can only stand in for text drawn without scale or rotation
 
-      Vector<Rectangle2D> lineBounds = new Vector<Rectangle2D>();
-      Rectangle2D messageBounds = computeMessageBounds(g, lines, lineBounds);
+      int type = g.getTransform().getType();
+      if ((type & ~AffineTransform.TYPE_TRANSLATION) != 0 ||
+        !(g.getPaint() instanceof Color))
+      {
+        drawMessage(g, lines, box, horizontal, vertical);
+        return;
+      }
+
+      // the fractional part of the box position is retained so the image
+      // holds exactly the pixels drawMessage would produce
+
+      double x = Math.floor(box.getX());
+      double y = Math.floor(box.getY());
+      Fit fit = fitMessage(g, lines, box);
+      SpriteKey key = new SpriteKey(fit, g.getColor(),
+        g.getFontRenderContext(), g.getRenderingHints(), lines,
+        box.getX() - x, box.getY() - y, box.getWidth(), box.getHeight(),
+        horizontal, vertical);
+      Sprite sprite = SPRITE_CACHE.get(key);
 
+      // render the sprite, with a margin large enough to hold any part of
+      // the glyphs which spill out of the box
+
+      if (sprite == null)
+      {
+        int margin = (int)Math.ceil(fit.getFont().getSize2D());
+        BufferedImage image = g.getDeviceConfiguration()
+          .createCompatibleImage(
+            (int)Math.ceil(box.getWidth() + key.mX) + 2 * margin,
+            (int)Math.ceil(box.getHeight() + key.mY) + 2 * margin,
+            Transparency.TRANSLUCENT);
+        Graphics2D sg = image.createGraphics();
+        sg.setRenderingHints(g.getRenderingHints());
+        sg.setColor(g.getColor());
+        sg.setFont(fit.getFont());
+        drawLines(sg, lines, fit, margin + key.mX, margin + key.mY,
+          box.getWidth(), box.getHeight(), horizontal, vertical);
+        sg.dispose();
+        sprite = new Sprite(image, margin);
+        SPRITE_CACHE.put(key, sprite);
+      }
+
+      g.setFont(fit.getFont());
+      g.drawImage(sprite.mImage, (int)x - sprite.mMargin,
+        (int)y - sprite.mMargin, null);
+    }
+
+    /** Return the cache of rendered message images, from which hit
+     * rate and other metrics may be read, and which may be cleared to
+     * release the images.
+     *
+     * @return the rendered message cache.
+     */
+
+    public static LruCache<?, ?> getSpriteCache()
+    {
+      return SPRITE_CACHE;
+    }
+
+    // draw the lines of a fitted message into a box
+
+    private static void drawLines(Graphics2D g, String[] lines, Fit fit,
+      double x, double y, double width, double height,
+      Justify horizontal, Justify vertical)
+    {
       // establish the vertical offset
 
       double vOff = vertical.compute(
-        box.getHeight(), messageBounds.getHeight());
+        height, fit.getMessageBounds().getHeight());
 
       // draw message into frame
 
@@ -73,20 +319,84 @@ public class ScaleText
         // get the line and the line bounds
 
         String line = lines[i];
-        Rectangle2D lineBound = lineBounds.get(i);
+        Rectangle2D lineBound = fit.getLineBounds(i);
 
         // establish the horizontal offset
 
         double hOff = horizontal.compute(
-          box.getWidth(), lineBound.getWidth());
+          width, lineBound.getWidth());
 
         g.drawString(
           line,
-          (int)(box.getX()                    + hOff),
-          (int)(box.getY() + lineBound.getY() + vOff));
+          (int)(x                    + hOff),
+          (int)(y + lineBound.getY() + vOff));
       }
     }
 
+    /** Scale the font to fit a message into a box and measure the
+     * message at that font, or return the result of a previous call
+     * with the same font, render context, message and box size.  The
+     * font of the graphics is left unchanged.
+     *
+     * @param g graphic whose font and render context are used
+     * @param lines the message to fit
+     * @param box box to fit the message into
+     *
+     * @return the fitted font and bounds of the message.
+     */
+
+    public static Fit fitMessage(Graphics g, String[] lines, Rectangle2D box)
+    {
+      return fitMessage(g.getFont(), TextMeasure.getFontRenderContext(g),
+        lines, box);
+    }
+
+    /** Scale a font to fit a message into a box and measure the
+     * message at that font, or return the result of a previous call
+     * with the same inputs.  No graphic is needed, so this may be
+     * called from any thread, for example to precompute many fits in
+     * parallel.
+     *
+     * @param font the font to scale
+     * @param frc the render context in which to measure the message
+     * @param lines the message to fit
+     * @param box box to fit the message into
+     *
+     * @return the fitted font and bounds of the message.
+     */
+
+    public static Fit fitMessage(Font font, FontRenderContext frc,
+      String[] lines, Rectangle2D box)
+    {
+      FitKey key = new FitKey(font, frc, lines, box);
+      Fit fit = FIT_CACHE.get(key);
+      if (fit != null)
+        return fit;
+
+      // fit and measure the message
+
+      Font scaled = scaleFont(font, frc, lines, box);
+      Vector<Rectangle2D> lineBounds = new Vector<Rectangle2D>();
+      Rectangle2D messageBounds =
+        computeMessageBounds(scaled, frc, lines, lineBounds);
+      fit = new Fit(scaled, messageBounds,
+        lineBounds.toArray(new Rectangle2D[lineBounds.size()]));
+
+      FIT_CACHE.put(key, fit);
+      return fit;
+    }
+
+    /** Return the cache of fitted messages, from which hit rate and
+     * other metrics may be read.
+     *
+     * @return the fitted message cache.
+     */
+
+    public static LruCache<?, Fit> getFitCache()
+    {
+      return FIT_CACHE;
+    }
+
     /** compute the bounding box of the given message.
      *
      * @param g the graphics context from witch font and font size are
@@ -112,15 +422,28 @@ public class ScaleText
      * @return the rectangle whitch enclises the message.
      */
 
-    // compute the bounding box of the given message 
-
     public static Rectangle2D computeMessageBounds(
       Graphics g, String[] lines, Vector<Rectangle2D> lineBounds)
     {
-      // establish the font metrics 
+      return computeMessageBounds(g.getFont(),
+        TextMeasure.getFontRenderContext(g), lines, lineBounds);
+    }
 
-      FontMetrics fm = g.getFontMetrics();
+    /** compute the bounding box of the given message without a
+     * graphics context.
+     *
+     * @param font the font in which the message is measured.
+     * @param frc the render context in which the message is measured.
+     * @param lines the lines that make up the message.
+     * @param lineBounds an optional vector in which the enclosing
+     * rectangle for each line is stored.
+     *
+     * @return the rectangle whitch enclises the message.
+     */
 
+    public static Rectangle2D computeMessageBounds(Font font,
+      FontRenderContext frc, String[] lines, Vector<Rectangle2D> lineBounds)
+    {
       // make a place to put the message bounding box
 
       Rectangle2D messageBounds = null;
@@ -135,7 +458,8 @@ public class ScaleText
       {
         // compute the line bound
 
-        Rectangle2D lineBound = fm.getStringBounds(line, g);
+        Rectangle2D lineBound =
+          TextMeasure.SHARED.getStringBounds(font, frc, line);
 
         // move the line bounds donw the correct amount
 
@@ -172,11 +496,27 @@ public class ScaleText
 
     public static void scaleFont(Graphics g, String[] lines, Rectangle2D box)
     {
-      g.getFontMetrics();
+      g.setFont(scaleFont(g.getFont(), TextMeasure.getFontRenderContext(g),
+        lines, box));
+    }
+
+    /** Scale a font to that which allows the provided message to fit
+     * into the provided box, without a graphics context.
+     *
+     * @param font the font to scale
+     * @param frc the render context in which the message is measured
+     * @param lines the message to draw
+     * @param box box to paint message into
+     *
+     * @return the scaled font.
+     */
 
+    public static Font scaleFont(Font font, FontRenderContext frc,
+      String[] lines, Rectangle2D box)
+    {
       // establish the bounding box of the entire message
 
-      Rectangle2D msgBounds = computeMessageBounds(g, lines);
+      Rectangle2D msgBounds = computeMessageBounds(font, frc, lines, null);
 
       // compute how much to increase font by to make it fit
       // nicely on the screen
@@ -185,9 +525,8 @@ public class ScaleText
         (box.getWidth() / msgBounds.getWidth()) * 0.9d,
         (box.getHeight() / msgBounds.getHeight()) * 0.9d);
 
-      // set font size
+      // return the scaled font
 
-      Font font = g.getFont();
-      g.setFont(font.deriveFont(font.getSize() * (float)increase));
+      return font.deriveFont(font.getSize() * (float)increase);
     }
 }
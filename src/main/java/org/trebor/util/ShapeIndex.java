@@ -0,0 +1,501 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A spatial index of placed shapes for hit testing. The bounding boxes of
+ * the shapes are kept in a balanced bounding volume hierarchy, so point and
+ * rectangle queries visit a logarithmic number of boxes, and only the shapes
+ * whose boxes match are given the exact, and comparatively costly,
+ * {@link Shape#contains(double, double)} or
+ * {@link Shape#intersects(Rectangle2D)} test. Shapes may be added and
+ * removed at any time; the tree is rebalanced with rotations as it changes.
+ * <p>
+ * Shapes are identified by identity, and the bounds of a shape are read when
+ * it is added, so a shape which moves should be removed and added again.
+ * Query results are in the order the shapes were added, which is taken to
+ * be the order in which they are drawn.
+ * <p>
+ * A shape index is not thread safe.
+ * 
+ * @author trebor
+ */
+
+public class ShapeIndex<S extends Shape>
+{
+  private final Map<S, Node<S>> mLeaves;
+  private Node<S> mRoot;
+  private long mSequence;
+
+  // a node of the tree, leaves hold a shape, branches have two children
+
+  private static class Node<S>
+  {
+    Node<S> mParent;
+    Node<S> mLeft;
+    Node<S> mRight;
+    S mShape;
+    long mSequence;
+    int mHeight;
+    double mMinX;
+    double mMinY;
+    double mMaxX;
+    double mMaxY;
+
+    boolean isLeaf()
+    {
+      return mLeft == null;
+    }
+
+    // set bounds and height to enclose two children
+
+    void fit(Node<S> a, Node<S> b)
+    {
+      mMinX = Math.min(a.mMinX, b.mMinX);
+      mMinY = Math.min(a.mMinY, b.mMinY);
+      mMaxX = Math.max(a.mMaxX, b.mMaxX);
+      mMaxY = Math.max(a.mMaxY, b.mMaxY);
+      mHeight = 1 + Math.max(a.mHeight, b.mHeight);
+    }
+
+    double perimeter()
+    {
+      return 2 * (mMaxX - mMinX + mMaxY - mMinY);
+    }
+
+    // perimeter of the box enclosing this node and another
+
+    double perimeter(Node<S> other)
+    {
+      return 2 * (Math.max(mMaxX, other.mMaxX) - Math.min(mMinX, other.mMinX) +
+        Math.max(mMaxY, other.mMaxY) - Math.min(mMinY, other.mMinY));
+    }
+
+    boolean contains(double x, double y)
+    {
+      return x >= mMinX && x <= mMaxX && y >= mMinY && y <= mMaxY;
+    }
+
+    boolean intersects(double minX, double minY, double maxX, double maxY)
+    {
+      return minX <= mMaxX && maxX >= mMinX && minY <= mMaxY && maxY >= mMinY;
+    }
+  }
+
+  // orders shapes as they were added
+
+  private static final Comparator<Node<?>> SEQUENCE_ORDER =
+    new Comparator<Node<?>>()
+    {
+      public int compare(Node<?> a, Node<?> b)
+      {
+        return a.mSequence < b.mSequence
+          ? -1
+          : (a.mSequence == b.mSequence ? 0 : 1);
+      }
+    };
+
+  /** Construct an empty shape index. */
+
+  public ShapeIndex()
+  {
+    mLeaves = new IdentityHashMap<S, Node<S>>();
+  }
+
+  /**
+   * Add a shape to the index, above all shapes already in the index.
+   * 
+   * @param shape the shape to add
+   */
+
+  public void add(S shape)
+  {
+    if (mLeaves.containsKey(shape))
+      throw new IllegalArgumentException("shape already indexed: " + shape);
+
+    Rectangle2D bounds = shape.getBounds2D();
+    Node<S> leaf = new Node<S>();
+    leaf.mShape = shape;
+    leaf.mSequence = mSequence++;
+    leaf.mMinX = bounds.getMinX();
+    leaf.mMinY = bounds.getMinY();
+    leaf.mMaxX = bounds.getMaxX();
+    leaf.mMaxY = bounds.getMaxY();
+    mLeaves.put(shape, leaf);
+    insert(leaf);
+  }
+
+  /**
+   * Remove a shape from the index.
+   * 
+   * @param shape the shape to remove
+   * @return true if the shape was in the index.
+   */
+
+  public boolean remove(S shape)
+  {
+    Node<S> leaf = mLeaves.remove(shape);
+    if (leaf == null)
+      return false;
+
+    remove(leaf);
+    return true;
+  }
+
+  /**
+   * Test if a shape is in the index.
+   * 
+   * @param shape the shape to look for
+   * @return true if this exact shape instance is in the index.
+   */
+
+  public boolean contains(S shape)
+  {
+    return mLeaves.containsKey(shape);
+  }
+
+  /**
+   * Return the number of shapes in the index.
+   * 
+   * @return the number of indexed shapes.
+   */
+
+  public int size()
+  {
+    return mLeaves.size();
+  }
+
+  /** Remove all shapes from the index. */
+
+  public void clear()
+  {
+    mLeaves.clear();
+    mRoot = null;
+  }
+
+  /**
+   * Return the height of the tree, which grows as the log of the number of
+   * shapes.
+   * 
+   * @return the height of the tree, 0 when empty or holding one shape.
+   */
+
+  public int getHeight()
+  {
+    return mRoot == null ? 0 : mRoot.mHeight;
+  }
+
+  /**
+   * Return the topmost shape, that added last, which contains a point.
+   * 
+   * @param x x coordinate of the point
+   * @param y y coordinate of the point
+   * @return the topmost shape containing the point, or null if none do.
+   */
+
+  public S getShapeAt(double x, double y)
+  {
+    Node<S> top = null;
+    List<Node<S>> stack = new ArrayList<Node<S>>();
+    if (mRoot != null)
+      stack.add(mRoot);
+    while (!stack.isEmpty())
+    {
+      Node<S> node = stack.remove(stack.size() - 1);
+      if (!node.contains(x, y))
+        continue;
+      if (!node.isLeaf())
+      {
+        stack.add(node.mLeft);
+        stack.add(node.mRight);
+      }
+      else if ((top == null || node.mSequence > top.mSequence) &&
+        node.mShape.contains(x, y))
+        top = node;
+    }
+    return top == null ? null : top.mShape;
+  }
+
+  /**
+   * Return all the shapes which contain a point.
+   * 
+   * @param x x coordinate of the point
+   * @param y y coordinate of the point
+   * @return the shapes containing the point, in the order they were added.
+   */
+
+  public List<S> getShapesAt(double x, double y)
+  {
+    List<Node<S>> found = new ArrayList<Node<S>>();
+    List<Node<S>> stack = new ArrayList<Node<S>>();
+    if (mRoot != null)
+      stack.add(mRoot);
+    while (!stack.isEmpty())
+    {
+      Node<S> node = stack.remove(stack.size() - 1);
+      if (!node.contains(x, y))
+        continue;
+      if (!node.isLeaf())
+      {
+        stack.add(node.mLeft);
+        stack.add(node.mRight);
+      }
+      else if (node.mShape.contains(x, y))
+        found.add(node);
+    }
+    return shapes(found);
+  }
+
+  /**
+   * Return all the shapes which intersect a rectangle.
+   * 
+   * @param rectangle the rectangle to test
+   * @return the shapes intersecting the rectangle, in the order they were
+   *         added.
+   */
+
+  public List<S> getShapesIntersecting(Rectangle2D rectangle)
+  {
+    double minX = rectangle.getMinX();
+    double minY = rectangle.getMinY();
+    double maxX = rectangle.getMaxX();
+    double maxY = rectangle.getMaxY();
+    List<Node<S>> found = new ArrayList<Node<S>>();
+    List<Node<S>> stack = new ArrayList<Node<S>>();
+    if (mRoot != null)
+      stack.add(mRoot);
+    while (!stack.isEmpty())
+    {
+      Node<S> node = stack.remove(stack.size() - 1);
+      if (!node.intersects(minX, minY, maxX, maxY))
+        continue;
+      if (!node.isLeaf())
+      {
+        stack.add(node.mLeft);
+        stack.add(node.mRight);
+      }
+      else if (node.mShape.intersects(rectangle))
+        found.add(node);
+    }
+    return shapes(found);
+  }
+
+  // sort found leaves into the order they were added and extract the shapes
+
+  private List<S> shapes(List<Node<S>> found)
+  {
+    Collections.sort(found, SEQUENCE_ORDER);
+    List<S> shapes = new ArrayList<S>(found.size());
+    for (Node<S> node: found)
+      shapes.add(node.mShape);
+    return shapes;
+  }
+
+  // insert a leaf beside the sibling which least enlarges the tree
+
+  private void insert(Node<S> leaf)
+  {
+    if (mRoot == null)
+    {
+      mRoot = leaf;
+      return;
+    }
+
+    // descend while pushing the leaf into a child is cheaper than pairing
+    // it with the whole subtree, the cost being the perimeter added
+
+    Node<S> sibling = mRoot;
+    while (!sibling.isLeaf())
+    {
+      double combined = sibling.perimeter(leaf);
+      double cost = 2 * combined;
+      double inheritance = 2 * (combined - sibling.perimeter());
+      double leftCost = descendCost(sibling.mLeft, leaf) + inheritance;
+      double rightCost = descendCost(sibling.mRight, leaf) + inheritance;
+      if (cost < leftCost && cost < rightCost)
+        break;
+      sibling = leftCost < rightCost ? sibling.mLeft : sibling.mRight;
+    }
+
+    // pair the leaf and the sibling under a new branch
+
+    Node<S> oldParent = sibling.mParent;
+    Node<S> branch = new Node<S>();
+    branch.mParent = oldParent;
+    branch.mLeft = sibling;
+    branch.mRight = leaf;
+    branch.fit(sibling, leaf);
+    sibling.mParent = branch;
+    leaf.mParent = branch;
+    if (oldParent == null)
+      mRoot = branch;
+    else if (oldParent.mLeft == sibling)
+      oldParent.mLeft = branch;
+    else
+      oldParent.mRight = branch;
+
+    refit(oldParent);
+  }
+
+  // the perimeter a subtree grows by if the leaf is pushed into it
+
+  private double descendCost(Node<S> child, Node<S> leaf)
+  {
+    return child.isLeaf()
+      ? child.perimeter(leaf)
+      : child.perimeter(leaf) - child.perimeter();
+  }
+
+  // remove a leaf, its sibling takes the place of their parent
+
+  private void remove(Node<S> leaf)
+  {
+    if (leaf == mRoot)
+    {
+      mRoot = null;
+      return;
+    }
+
+    Node<S> parent = leaf.mParent;
+    Node<S> grandparent = parent.mParent;
+    Node<S> sibling = parent.mLeft == leaf ? parent.mRight : parent.mLeft;
+    sibling.mParent = grandparent;
+    if (grandparent == null)
+      mRoot = sibling;
+    else
+    {
+      if (grandparent.mLeft == parent)
+        grandparent.mLeft = sibling;
+      else
+        grandparent.mRight = sibling;
+      refit(grandparent);
+    }
+  }
+
+  // rebalance and refit each branch from a node up to the root
+
+  private void refit(Node<S> node)
+  {
+    while (node != null)
+    {
+      node = balance(node);
+      node.fit(node.mLeft, node.mRight);
+      node = node.mParent;
+    }
+  }
+
+  // if one child of a branch is more than one taller than the other, rotate
+  // the taller child up into the place of the branch, and return the node
+  // now in that place
+
+  private Node<S> balance(Node<S> a)
+  {
+    if (a.isLeaf() || a.mHeight < 2)
+      return a;
+
+    Node<S> b = a.mLeft;
+    Node<S> c = a.mRight;
+    int balance = c.mHeight - b.mHeight;
+
+    if (balance > 1)
+    {
+      Node<S> f = c.mLeft;
+      Node<S> g = c.mRight;
+      replace(a, c);
+      c.mLeft = a;
+      a.mParent = c;
+
+      // a keeps the shorter grandchild, c the taller
+
+      if (f.mHeight > g.mHeight)
+      {
+        c.mRight = f;
+        a.mRight = g;
+        g.mParent = a;
+        a.fit(b, g);
+        c.fit(a, f);
+      }
+      else
+      {
+        c.mRight = g;
+        a.mRight = f;
+        f.mParent = a;
+        a.fit(b, f);
+        c.fit(a, g);
+      }
+      return c;
+    }
+
+    if (balance < -1)
+    {
+      Node<S> d = b.mLeft;
+      Node<S> e = b.mRight;
+      replace(a, b);
+      b.mLeft = a;
+      a.mParent = b;
+
+      if (d.mHeight > e.mHeight)
+      {
+        b.mRight = d;
+        a.mLeft = e;
+        e.mParent = a;
+        a.fit(e, c);
+        b.fit(a, d);
+      }
+      else
+      {
+        b.mRight = e;
+        a.mLeft = d;
+        d.mParent = a;
+        a.fit(d, c);
+        b.fit(a, e);
+      }
+      return b;
+    }
+
+    return a;
+  }
+
+  // put a child in the place of its parent
+
+  private void replace(Node<S> parent, Node<S> child)
+  {
+    Node<S> grandparent = parent.mParent;
+    child.mParent = grandparent;
+    if (grandparent == null)
+      mRoot = child;
+    else if (grandparent.mLeft == parent)
+      grandparent.mLeft = child;
+    else
+      grandparent.mRight = child;
+  }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A library of named shapes stored in a compact binary file. Each shape is
+ * stored as its path segment opcodes, one byte each, followed by its
+ * coordinates as floats. An index at the start of the file holds the name,
+ * winding rule and location of each shape. A library is opened by memory
+ * mapping the file and reading only the index; each shape is built the first
+ * time it is asked for, so opening a large library costs about the same as
+ * opening a small one.
+ * <p>
+ * The file layout, all values big endian, is:
+ * 
+ * <pre>
+ * int    magic "SHPL"
+ * int    version
+ * int    shape count
+ * for each shape:
+ *   short  name length, followed by the UTF-8 name
+ *   byte   winding rule
+ *   int    segment count
+ *   int    coordinate count
+ *   int    file offset of the shape data
+ * for each shape:
+ *   byte[] segment opcodes, see PathIterator, padded to 4 bytes
+ *   float[] coordinates
+ * </pre>
+ * 
+ * A shape library is thread safe.
+ * 
+ * @author trebor
+ */
+
+public class ShapeLibrary
+{
+  /** magic number at the start of a shape library file, "SHPL" */
+
+  public static final int MAGIC = 0x5348504C;
+
+  /** version of the file layout */
+
+  public static final int VERSION = 1;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final ByteBuffer mBuffer;
+  private final List<String> mNames;
+  private final Map<String, Integer> mIndices;
+  private final byte[] mWindings;
+  private final int[] mSegments;
+  private final int[] mCoordinates;
+  private final int[] mOffsets;
+  private final Shape[] mShapes;
+
+  // construct a library over mapped file contents, reading the index
+
+  private ShapeLibrary(ByteBuffer buffer) throws IOException
+  {
+    mBuffer = buffer;
+    if (buffer.remaining() < 12 || buffer.getInt() != MAGIC)
+      throw new IOException("not a shape library");
+    int version = buffer.getInt();
+    if (version != VERSION)
+      throw new IOException("unsupported shape library version: " + version);
+
+    int count = buffer.getInt();
+    List<String> names = new ArrayList<String>(count);
+    mIndices = new LinkedHashMap<String, Integer>();
+    mWindings = new byte[count];
+    mSegments = new int[count];
+    mCoordinates = new int[count];
+    mOffsets = new int[count];
+    mShapes = new Shape[count];
+    for (int i = 0; i < count; ++i)
+    {
+      byte[] name = new byte[buffer.getShort() & 0xffff];
+      buffer.get(name);
+      names.add(new String(name, UTF8));
+      mIndices.put(names.get(i), i);
+      mWindings[i] = buffer.get();
+      mSegments[i] = buffer.getInt();
+      mCoordinates[i] = buffer.getInt();
+      mOffsets[i] = buffer.getInt();
+      long end = (long)mOffsets[i] + padded(mSegments[i]) + 4L * mCoordinates[i];
+      if (mOffsets[i] < 0 || end > buffer.limit())
+        throw new IOException("shape data out of range: " + names.get(i));
+    }
+    mNames = Collections.unmodifiableList(names);
+  }
+
+  /**
+   * Open a shape library by memory mapping it. Only the index is read, the
+   * shapes are read as they are asked for.
+   * 
+   * @param file the shape library file
+   * @return the shape library.
+   * @throws IOException if the file could not be read or is not a shape
+   *           library
+   */
+
+  public static ShapeLibrary open(File file) throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try
+    {
+      FileChannel channel = raf.getChannel();
+      return new ShapeLibrary(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+        channel.size()));
+    }
+    finally
+    {
+      // the mapping remains valid once the file is closed
+
+      raf.close();
+    }
+  }
+
+  /**
+   * Write shapes to a shape library file. Curves are stored as is, not
+   * flattened, and coordinates are stored as floats.
+   * 
+   * @param file the file to write
+   * @param shapes the shapes to store, by name, in the order they are to be
+   *          stored
+   * @throws IOException if the file could not be written
+   */
+
+  public static void write(File file, Map<String, ? extends Shape> shapes)
+    throws IOException
+  {
+    // collect segments and coordinates of each shape first, as the index
+    // holds the offset of each
+
+    int count = shapes.size();
+    List<byte[]> names = new ArrayList<byte[]>(count);
+    byte[] windings = new byte[count];
+    List<byte[]> opcodes = new ArrayList<byte[]>(count);
+    List<float[]> coordinates = new ArrayList<float[]>(count);
+    int indexSize = 12;
+    for (Map.Entry<String, ? extends Shape> entry: shapes.entrySet())
+    {
+      byte[] name = entry.getKey().getBytes(UTF8);
+      if (name.length > 0xffff)
+        throw new IllegalArgumentException("shape name too long: " +
+          entry.getKey());
+
+      PathIterator path = entry.getValue().getPathIterator(null);
+      windings[names.size()] = (byte)path.getWindingRule();
+      names.add(name);
+      indexSize += 2 + name.length + 1 + 12;
+
+      byte[] ops = new byte[16];
+      float[] coords = new float[64];
+      int segmentCount = 0;
+      int coordinateCount = 0;
+      float[] segment = new float[6];
+      for (; !path.isDone(); path.next())
+      {
+        int type = path.currentSegment(segment);
+        if (segmentCount == ops.length)
+          ops = Arrays.copyOf(ops, ops.length * 2);
+        ops[segmentCount++] = (byte)type;
+        int n = pointCount(type) * 2;
+        if (coordinateCount + n > coords.length)
+          coords = Arrays.copyOf(coords, coords.length * 2 + n);
+        System.arraycopy(segment, 0, coords, coordinateCount, n);
+        coordinateCount += n;
+      }
+      opcodes.add(Arrays.copyOf(ops, segmentCount));
+      coordinates.add(Arrays.copyOf(coords, coordinateCount));
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(file)));
+    try
+    {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(count);
+      long offset = indexSize;
+      for (int i = 0; i < count; ++i)
+      {
+        out.writeShort(names.get(i).length);
+        out.write(names.get(i));
+        out.writeByte(windings[i]);
+        out.writeInt(opcodes.get(i).length);
+        out.writeInt(coordinates.get(i).length);
+        if (offset > Integer.MAX_VALUE)
+          throw new IOException("shape library too large");
+        out.writeInt((int)offset);
+        offset += padded(opcodes.get(i).length) + 4L *
+          coordinates.get(i).length;
+      }
+      for (int i = 0; i < count; ++i)
+      {
+        byte[] ops = opcodes.get(i);
+        out.write(ops);
+        out.write(new byte[padded(ops.length) - ops.length]);
+        for (float coordinate: coordinates.get(i))
+          out.writeFloat(coordinate);
+      }
+    }
+    finally
+    {
+      out.close();
+    }
+  }
+
+  /**
+   * Return the number of shapes in the library.
+   * 
+   * @return the number of shapes.
+   */
+
+  public int size()
+  {
+    return mShapes.length;
+  }
+
+  /**
+   * Return the names of the shapes, in the order they are stored.
+   * 
+   * @return an unmodifiable list of shape names.
+   */
+
+  public List<String> getNames()
+  {
+    return mNames;
+  }
+
+  /**
+   * Return a shape by name, reading it from the library if it has not been
+   * read before.
+   * 
+   * @param name the name of the shape
+   * @return the shape, or null if the library has no shape of that name.
+   */
+
+  public Shape getShape(String name)
+  {
+    Integer index = mIndices.get(name);
+    return index == null ? null : getShape(index);
+  }
+
+  /**
+   * Return a shape by position, reading it from the library if it has not
+   * been read before.
+   * 
+   * @param index the position of the shape in the library
+   * @return the shape.
+   */
+
+  public synchronized Shape getShape(int index)
+  {
+    if (mShapes[index] == null)
+      mShapes[index] = read(index);
+    return mShapes[index];
+  }
+
+  // build a shape from its segments and coordinates
+
+  private Shape read(int index)
+  {
+    int segments = mSegments[index];
+    int offset = mOffsets[index];
+    int coordinate = offset + padded(segments);
+    Path2D.Float path =
+      new Path2D.Float(mWindings[index], Math.max(segments, 1));
+    for (int i = 0; i < segments; ++i)
+    {
+      int type = mBuffer.get(offset + i);
+      float[] c = new float[pointCount(type) * 2];
+      for (int j = 0; j < c.length; ++j, coordinate += 4)
+        c[j] = mBuffer.getFloat(coordinate);
+      switch (type)
+      {
+      case PathIterator.SEG_MOVETO:
+        path.moveTo(c[0], c[1]);
+        break;
+      case PathIterator.SEG_LINETO:
+        path.lineTo(c[0], c[1]);
+        break;
+      case PathIterator.SEG_QUADTO:
+        path.quadTo(c[0], c[1], c[2], c[3]);
+        break;
+      case PathIterator.SEG_CUBICTO:
+        path.curveTo(c[0], c[1], c[2], c[3], c[4], c[5]);
+        break;
+      case PathIterator.SEG_CLOSE:
+        path.closePath();
+        break;
+      default:
+        throw new Error("unknown segment type: " + type);
+      }
+    }
+    return path;
+  }
+
+  // number of points which follow a segment opcode
+
+  private static int pointCount(int type)
+  {
+    switch (type)
+    {
+    case PathIterator.SEG_MOVETO:
+    case PathIterator.SEG_LINETO:
+      return 1;
+    case PathIterator.SEG_QUADTO:
+      return 2;
+    case PathIterator.SEG_CUBICTO:
+      return 3;
+    case PathIterator.SEG_CLOSE:
+      return 0;
+    default:
+      throw new Error("unknown segment type: " + type);
+    }
+  }
+
+  // length of the opcodes rounded up so the coordinates are aligned
+
+  private static int padded(int length)
+  {
+    return (length + 3) & ~3;
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Draws normalized shapes, such as the {@link ShapeTools} stock shapes, by
+ * blitting cached images rather then filling the shape. Each (shape, color,
+ * rotation) is rasterized on demand at power of two sizes, mipmap style, and
+ * drawn by scaling down the smallest cached size which is at least as large
+ * as that requested. Rotations are quantized into a fixed number of
+ * buckets. Where shapes are drawn at only a handful of sizes, the sprite
+ * cache may instead rasterize at each whole pixel size requested, which
+ * avoids scaling the image on each draw. The images are held in a least
+ * recently used cache bounded by their size in bytes.
+ * <p>
+ * Shapes are identified by identity, so the same shape instance should be
+ * used for each draw.
+ * 
+ * @author trebor
+ */
+
+public class ShapeSprites
+{
+  /** smallest size at which shapes are rasterized */
+
+  public static final int MIN_SIZE = 8;
+
+  /** largest size at which shapes are rasterized */
+
+  public static final int MAX_SIZE = 512;
+
+  /** pixels of clear space around each rasterized shape */
+
+  static final int PADDING = 1;
+
+  private final int mRotationBuckets;
+  private final boolean mExactSizes;
+  private final LruCache<List<Object>, BufferedImage> mSprites;
+
+  /**
+   * Construct a sprite cache.
+   * 
+   * @param maxBytes maximum bytes of images to hold
+   * @param rotationBuckets number of rotations into which a full turn is
+   *          divided
+   */
+
+  public ShapeSprites(long maxBytes, int rotationBuckets)
+  {
+    this(maxBytes, rotationBuckets, false);
+  }
+
+  /**
+   * Construct a sprite cache.
+   * 
+   * @param maxBytes maximum bytes of images to hold
+   * @param rotationBuckets number of rotations into which a full turn is
+   *          divided
+   * @param exactSizes rasterize at each whole pixel size requested rather
+   *          then at power of two sizes
+   */
+
+  public ShapeSprites(long maxBytes, int rotationBuckets, boolean exactSizes)
+  {
+    if (rotationBuckets < 1)
+      throw new IllegalArgumentException(
+        "rotation buckets must be positive: " + rotationBuckets);
+
+    mRotationBuckets = rotationBuckets;
+    mExactSizes = exactSizes;
+    mSprites = new LruCache<List<Object>, BufferedImage>(maxBytes)
+    {
+      protected long weigh(List<Object> key, BufferedImage image)
+      {
+        return 4L * image.getWidth() * image.getHeight();
+      }
+
+      protected void removed(List<Object> key, BufferedImage image)
+      {
+        image.flush();
+      }
+    };
+  }
+
+  /**
+   * Draw a normalized shape, centered on a point.
+   * 
+   * @param g graphic on which to draw
+   * @param shape the shape, centered on the origin and at most 1 wide and
+   *          high
+   * @param x x coordinate of the center of the shape
+   * @param y y coordinate of the center of the shape
+   * @param size the size at which to draw the shape
+   * @param color the color of the shape
+   * @param degrees the rotation of the shape
+   */
+
+  public void draw(Graphics2D g, Shape shape, double x, double y,
+    double size, Color color, double degrees)
+  {
+    // establish the mipmap level and the rotation bucket
+
+    int level = mExactSizes
+      ? Math.max(1, Math.min(MAX_SIZE, (int)Math.ceil(size)))
+      : level(size);
+    double bucketSize = 360.0 / mRotationBuckets;
+    int bucket = (int)Math.round(degrees / bucketSize) % mRotationBuckets;
+    if (bucket < 0)
+      bucket += mRotationBuckets;
+
+    // find or rasterize the sprite
+
+    List<Object> key = Arrays.<Object>asList(new Identity(shape), color,
+      level, bucket);
+    BufferedImage sprite = mSprites.get(key);
+    if (sprite == null)
+    {
+      sprite = rasterize(g, shape, level, color, bucket * bucketSize);
+      mSprites.put(key, sprite);
+    }
+
+    // draw the sprite scaled to the requested size, padding included
+
+    double scale = size / level;
+    double half = sprite.getWidth() * scale / 2;
+    int x1 = (int)Math.round(x - half);
+    int y1 = (int)Math.round(y - half);
+    int extent = (int)Math.round(sprite.getWidth() * scale);
+    if (extent == sprite.getWidth())
+      g.drawImage(sprite, x1, y1, null);
+    else
+      g.drawImage(sprite, x1, y1, extent, extent, null);
+  }
+
+  /**
+   * Return the cache of rasterized shapes, from which hit rate and other
+   * metrics may be read, and which may be cleared to release the images.
+   * 
+   * @return the sprite cache.
+   */
+
+  public LruCache<?, ?> getCache()
+  {
+    return mSprites;
+  }
+
+  // the smallest power of two size at least as large as the requested size
+
+  static int level(double size)
+  {
+    int level = MIN_SIZE;
+    while (level < size && level < MAX_SIZE)
+      level <<= 1;
+    return level;
+  }
+
+  // rasterize a shape at a given size, color and rotation
+
+  private static BufferedImage rasterize(Graphics2D g, Shape shape, int size,
+    Color color, double degrees)
+  {
+    // a rotated unit shape fits in a square the size of its diagonal
+
+    int extent = (int)Math.ceil(size * Math.sqrt(2)) + 2 * PADDING;
+    BufferedImage image = g.getDeviceConfiguration().createCompatibleImage(
+      extent, extent, Transparency.TRANSLUCENT);
+    Graphics2D ig = image.createGraphics();
+    ig.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+      RenderingHints.VALUE_ANTIALIAS_ON);
+    ig.setColor(color);
+    ig.fill(new ShapeTransform()
+      .rotate(degrees)
+      .scale(size, size)
+      .translate(extent / 2.0, extent / 2.0)
+      .apply(shape));
+    ig.dispose();
+    return image;
+  }
+
+  /** key wrapper which compares shapes by identity */
+
+  private static class Identity
+  {
+    private final Object mObject;
+
+    Identity(Object object)
+    {
+      mObject = object;
+    }
+
+    public int hashCode()
+    {
+      return System.identityHashCode(mObject);
+    }
+
+    public boolean equals(Object other)
+    {
+      return other instanceof Identity && ((Identity)other).mObject == mObject;
+    }
+  }
+}
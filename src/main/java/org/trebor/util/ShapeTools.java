@@ -24,6 +24,7 @@ package org.trebor.util;
 
 import java.io.File;
 
+import java.awt.AlphaComposite;
 import java.awt.Robot;
 import java.awt.Shape;
 import java.awt.Polygon;
@@ -34,26 +35,170 @@ import java.awt.geom.Arc2D;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.awt.Component;
+import java.awt.Container;
+import java.awt.Graphics2D;
 
 import javax.swing.SwingUtilities;
 import javax.imageio.ImageIO;
 
 public class ShapeTools
 {
-    // shapes
-
-    public static final Shape TRIANGLE = createRegularPoly(3);
-    public static final Shape SQUARE   = normalize(new Rectangle2D.Float(0, 0, 1, 1));
-    public static final Shape PENTAGON = createRegularPoly(5);
-    public static final Shape HEXAGON  = createRegularPoly(6);
-    public static final Shape CIRCLE   = normalize(new Ellipse2D.Float(0, 0, 1, 1));
-    public static final Shape HEART    = createHeartShape();
-    public static final Shape STAR     = createStar(5);
-    public static final Shape CAT      = createCatShape();
-    public static final Shape DOG      = createDogShape();
-    public static final Shape FISH     = createFishShape();
+    // shapes, each of which is created the first time it is used rather
+    // then when this class is loaded
+
+    public static final Shape TRIANGLE = new LazyShape()
+    {
+      Shape create()
+      {
+        return createRegularPoly(3);
+      }
+    };
+    public static final Shape SQUARE = new LazyShape()
+    {
+      Shape create()
+      {
+        return normalize(new Rectangle2D.Float(0, 0, 1, 1));
+      }
+    };
+    public static final Shape PENTAGON = new LazyShape()
+    {
+      Shape create()
+      {
+        return createRegularPoly(5);
+      }
+    };
+    public static final Shape HEXAGON = new LazyShape()
+    {
+      Shape create()
+      {
+        return createRegularPoly(6);
+      }
+    };
+    public static final Shape CIRCLE = new LazyShape()
+    {
+      Shape create()
+      {
+        return normalize(new Ellipse2D.Float(0, 0, 1, 1));
+      }
+    };
+    public static final Shape HEART = new LazyShape()
+    {
+      Shape create()
+      {
+        return createHeartShape();
+      }
+    };
+    public static final Shape STAR = new LazyShape()
+    {
+      Shape create()
+      {
+        return createStar(5);
+      }
+    };
+    public static final Shape CAT = new LazyShape()
+    {
+      Shape create()
+      {
+        return createCatShape();
+      }
+    };
+    public static final Shape DOG = new LazyShape()
+    {
+      Shape create()
+      {
+        return createDogShape();
+      }
+    };
+    public static final Shape FISH = new LazyShape()
+    {
+      Shape create()
+      {
+        return createFishShape();
+      }
+    };
+
+    /** A shape which is created, once and thread safely, the first time
+     * any of its methods are called. */
+
+    static abstract class LazyShape implements Shape
+    {
+      private volatile Shape mShape;
+
+      /** create the shape */
+
+      abstract Shape create();
+
+      /** return the shape, creating it if need be */
+
+      Shape get()
+      {
+        Shape shape = mShape;
+        if (shape == null)
+        {
+          synchronized (this)
+          {
+            shape = mShape;
+            if (shape == null)
+              mShape = shape = create();
+          }
+        }
+        return shape;
+      }
+
+      public Rectangle getBounds()
+      {
+        return get().getBounds();
+      }
+
+      public Rectangle2D getBounds2D()
+      {
+        return get().getBounds2D();
+      }
+
+      public boolean contains(double x, double y)
+      {
+        return get().contains(x, y);
+      }
+
+      public boolean contains(Point2D p)
+      {
+        return get().contains(p);
+      }
+
+      public boolean intersects(double x, double y, double w, double h)
+      {
+        return get().intersects(x, y, w, h);
+      }
+
+      public boolean intersects(Rectangle2D r)
+      {
+        return get().intersects(r);
+      }
+
+      public boolean contains(double x, double y, double w, double h)
+      {
+        return get().contains(x, y, w, h);
+      }
+
+      public boolean contains(Rectangle2D r)
+      {
+        return get().contains(r);
+      }
+
+      public PathIterator getPathIterator(AffineTransform at)
+      {
+        return get().getPathIterator(at);
+      }
+
+      public PathIterator getPathIterator(AffineTransform at, double flatness)
+      {
+        return get().getPathIterator(at, flatness);
+      }
+    }
 
     /** create heart shape */
 
@@ -112,10 +257,11 @@ public class ShapeTools
 
       // add nose
 
-      Area nose = new Area(createRegularPoly(3));
-      rotate(nose, 180);
-      scale(nose, .15, .15);
-      translate(nose, 0, .1);
+      Area nose = new ShapeTransform()
+        .rotate(180)
+        .scale(.15, .15)
+        .translate(0, .1)
+        .apply(new Area(createRegularPoly(3)));
       cat.subtract(nose);
 
       // flatten the cat
@@ -158,17 +304,19 @@ public class ShapeTools
 
       // add nose
 
-      Area snout = new Area(CIRCLE);
-      scale(snout, .30, .30);
-      translate(snout, 0, .2);
+      Area snout = new ShapeTransform()
+        .scale(.30, .30)
+        .translate(0, .2)
+        .apply(new Area(CIRCLE));
       dog.subtract(snout);
 
       // add nose
 
-      Area nose = new Area(createRegularPoly(3));
-      rotate(nose, 180);
-      scale(nose, .20, .20);
-      translate(nose, 0, .2);
+      Area nose = new ShapeTransform()
+        .rotate(180)
+        .scale(.20, .20)
+        .translate(0, .2)
+        .apply(new Area(createRegularPoly(3)));
       dog.add(nose);
 
       // stretch the dog
@@ -264,20 +412,19 @@ public class ShapeTools
 
     public static Shape normalize(Shape shape)
     {
-      // center the shape on the origin
+      // center the shape on the origin and normalize its size with a
+      // single transform, centering does not change the size
 
       Rectangle2D bounds = shape.getBounds2D();
-      shape = translate(shape,
-      -(bounds.getX() + bounds.getWidth() / 2),
-      -(bounds.getY() + bounds.getHeight() / 2));
-
-      // normalize size
-
-      bounds = shape.getBounds2D();
       double scale = bounds.getWidth() > bounds.getHeight()
         ? 1.0 / bounds.getWidth()
         : 1.0 / bounds.getHeight();
-      return scale(shape, scale, scale);
+      return new ShapeTransform()
+        .translate(
+          -(bounds.getX() + bounds.getWidth() / 2),
+          -(bounds.getY() + bounds.getHeight() / 2))
+        .scale(scale, scale)
+        .apply(shape);
     }
     /** rotate a shape */
 
@@ -356,6 +503,87 @@ public class ShapeTools
       return robot.createScreenCapture(bounds);
     }
 
+    /** Paint a component into a new image, without reading the screen. The
+     * component need not be showing, or even displayable, so this works in
+     * a headless environment. Where the component is showing, this should
+     * be called on the event dispatch thread.
+     *
+     * @param component the component to paint
+     *
+     * @return an image of the component.
+     */
+
+    public static BufferedImage paintImage(Component component)
+    {
+      return paintImage(component, new BufferedImage(
+        Math.max(1, component.getWidth()), Math.max(1, component.getHeight()),
+        BufferedImage.TYPE_INT_ARGB));
+    }
+
+    /** Paint a component into an image acquired from a pool, without
+     * reading the screen. The image should be released back to the pool
+     * once it is no longer needed.
+     *
+     * @param component the component to paint
+     * @param pool the pool from which to acquire the image
+     *
+     * @return a pooled image of the component.
+     */
+
+    public static BufferedImage paintImage(Component component, ImagePool pool)
+    {
+      return paintImage(component, pool.acquire(
+        Math.max(1, component.getWidth()), Math.max(1, component.getHeight()),
+        BufferedImage.TYPE_INT_ARGB));
+    }
+
+    /** Paint a component into an existing image, without reading the
+     * screen. The image is cleared first, and the component painted at its
+     * top left corner.
+     *
+     * @param component the component to paint
+     * @param image the image to paint into
+     *
+     * @return the image passed in.
+     */
+
+    public static BufferedImage paintImage(Component component,
+      BufferedImage image)
+    {
+      // a component which has never been shown has not been laid out
+
+      if (!component.isDisplayable())
+        layout(component);
+
+      Graphics2D g = image.createGraphics();
+      try
+      {
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+        g.clipRect(0, 0, component.getWidth(), component.getHeight());
+        component.paint(g);
+      }
+      finally
+      {
+        g.dispose();
+      }
+      return image;
+    }
+
+    // lay out a component and all its children
+
+    private static void layout(Component component)
+    {
+      if (component instanceof Container)
+      {
+        Container container = (Container)component;
+        container.doLayout();
+        for (Component child: container.getComponents())
+          layout(child);
+      }
+    }
+
     /** Capture the area from a given component and write it out to the
      * home director of the user.
      *
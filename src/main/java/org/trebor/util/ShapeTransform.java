@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+
+/**
+ * Fluent builder which concatenates a chain of {@link ShapeTools} style
+ * operations into a single {@link AffineTransform}, so that a shape is
+ * transformed once rather then once per operation. Operations apply in the
+ * order they are added, exactly as the equivalent chain of calls to
+ * {@link ShapeTools#translate(Shape, double, double)},
+ * {@link ShapeTools#scale(Shape, double, double)} and
+ * {@link ShapeTools#rotate(Shape, double)} would.
+ * 
+ * <pre>
+ * Shape shape = new ShapeTransform()
+ *   .scale(.5, .5)
+ *   .rotate(30)
+ *   .translate(10, 20)
+ *   .apply(ShapeTools.STAR);
+ * </pre>
+ * 
+ * @author trebor
+ */
+
+public class ShapeTransform
+{
+  private final AffineTransform mTransform;
+
+  /** Construct an identity transform. */
+
+  public ShapeTransform()
+  {
+    mTransform = new AffineTransform();
+  }
+
+  /**
+   * Follow the operations so far with a translation.
+   * 
+   * @param x distance to translate along the x axis
+   * @param y distance to translate along the y axis
+   * @return this transform.
+   */
+
+  public ShapeTransform translate(double x, double y)
+  {
+    mTransform.preConcatenate(AffineTransform.getTranslateInstance(x, y));
+    return this;
+  }
+
+  /**
+   * Follow the operations so far with a scale about the origin.
+   * 
+   * @param x scale along the x axis
+   * @param y scale along the y axis
+   * @return this transform.
+   */
+
+  public ShapeTransform scale(double x, double y)
+  {
+    mTransform.preConcatenate(AffineTransform.getScaleInstance(x, y));
+    return this;
+  }
+
+  /**
+   * Follow the operations so far with a rotation about the origin.
+   * 
+   * @param degrees the angle to rotate by
+   * @return this transform.
+   */
+
+  public ShapeTransform rotate(double degrees)
+  {
+    mTransform.preConcatenate(
+      AffineTransform.getRotateInstance(degrees / 180 * Math.PI));
+    return this;
+  }
+
+  /**
+   * Follow the operations so far with an arbitrary transform.
+   * 
+   * @param transform the transform to follow with
+   * @return this transform.
+   */
+
+  public ShapeTransform then(AffineTransform transform)
+  {
+    mTransform.preConcatenate(transform);
+    return this;
+  }
+
+  /**
+   * Return a copy of the concatenated transform.
+   * 
+   * @return the concatenated transform.
+   */
+
+  public AffineTransform getTransform()
+  {
+    return new AffineTransform(mTransform);
+  }
+
+  /**
+   * Apply the concatenated operations to a shape.
+   * 
+   * @param shape the shape to transform, which is not modified
+   * @return a new transformed shape.
+   */
+
+  public Shape apply(Shape shape)
+  {
+    return mTransform.createTransformedShape(shape);
+  }
+
+  /**
+   * Apply the concatenated operations to an area, modifying the area in
+   * place rather then copying it.
+   * 
+   * @param area the area to transform
+   * @return the provided area, now transformed.
+   */
+
+  public Area apply(Area area)
+  {
+    area.transform(mTransform);
+    return area;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Thread safe text measurement which needs no {@link Graphics}, only a font
+ * and a render context. String bounds are cached by font, render context
+ * and string, so repeated measurement of the same labels is cheap, and
+ * measurement may be performed concurrently from any thread, including in
+ * headless environments.
+ * 
+ * @author trebor
+ */
+
+public class TextMeasure
+{
+  /** number of strings held by the shared measurer */
+
+  public static final int DEFAULT_CAPACITY = 16384;
+
+  /** render context of a plain Graphics, which FontMetrics measure with */
+
+  public static final FontRenderContext PLAIN_FONT_RENDER_CONTEXT =
+    new FontRenderContext(null, false, false);
+
+  /** measurer shared by the text tools */
+
+  public static final TextMeasure SHARED = new TextMeasure(DEFAULT_CAPACITY);
+
+  private final LruCache<List<Object>, Rectangle2D> mBounds;
+
+  /**
+   * Construct a text measurer.
+   * 
+   * @param capacity the number of string bounds to cache
+   */
+
+  public TextMeasure(int capacity)
+  {
+    mBounds = new LruCache<List<Object>, Rectangle2D>(capacity);
+  }
+
+  /**
+   * Return the render context in which a graphic measures text, as used by
+   * {@link java.awt.FontMetrics#getStringBounds(String, Graphics)}.
+   * 
+   * @param g the graphic
+   * @return the render context of the graphic.
+   */
+
+  public static FontRenderContext getFontRenderContext(Graphics g)
+  {
+    return g instanceof Graphics2D
+      ? ((Graphics2D)g).getFontRenderContext()
+      : PLAIN_FONT_RENDER_CONTEXT;
+  }
+
+  /**
+   * Return the logical bounds of a string, as would be returned by
+   * {@link Font#getStringBounds(String, FontRenderContext)}.
+   * 
+   * @param font the font of the string
+   * @param frc the render context in which to measure the string
+   * @param text the string to measure
+   * @return a new rectangle, which the caller may modify.
+   */
+
+  public Rectangle2D getStringBounds(Font font, FontRenderContext frc,
+    String text)
+  {
+    List<Object> key = Arrays.<Object>asList(font, frc, text);
+    Rectangle2D bounds = mBounds.get(key);
+    if (bounds == null)
+    {
+      bounds = font.getStringBounds(text, frc);
+      mBounds.put(key, bounds);
+    }
+    return (Rectangle2D)bounds.clone();
+  }
+
+  /**
+   * Return the advance of a string, the width of its logical bounds.
+   * 
+   * @param font the font of the string
+   * @param frc the render context in which to measure the string
+   * @param text the string to measure
+   * @return the advance of the string.
+   */
+
+  public double getAdvance(Font font, FontRenderContext frc, String text)
+  {
+    return getStringBounds(font, frc, text).getWidth();
+  }
+
+  /**
+   * Return the cache of string bounds, from which hit rate and other
+   * metrics may be read.
+   * 
+   * @return the string bounds cache.
+   */
+
+  public LruCache<?, ?> getCache()
+  {
+    return mBounds;
+  }
+}
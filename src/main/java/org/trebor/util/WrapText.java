@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2008 Robert B. Harris (trebor@trebor.org).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.trebor.util;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.awt.geom.Rectangle2D;
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Find the largest font size at which a paragraph word wraps into a box,
+ * and draw the wrapped paragraph. Unlike {@link ScaleText}, which scales
+ * lines which have already been split, this breaks the text into lines
+ * itself.
+ * <p>
+ * The search measures the paragraph once, at {@link #MEASURE_SIZE}, with a
+ * single {@link LineBreakMeasurer}. Because text scales linearly with
+ * font size, wrapping at size s into a width w is equivalent to wrapping at
+ * the measured size into the width w scaled by the ratio of the sizes, so
+ * each step of the binary search reuses that measurer rather then building
+ * new layouts. Only the final size is laid out for real, and that layout is
+ * cached for repeated draws.
+ * 
+ * @author trebor
+ */
+
+public class WrapText
+{
+  /** smallest font size considered */
+
+  public static final float MIN_SIZE = 1f;
+
+  /** the search stops when the size is known to within this many points */
+
+  public static final float TOLERANCE = 0.05f;
+
+  /** font size at which paragraphs are measured during the search */
+
+  public static final float MEASURE_SIZE = 72f;
+
+  /** number of wrapped paragraphs held by the layout cache */
+
+  public static final int CACHE_CAPACITY = 256;
+
+  /** fitted paragraphs by text, font, render context and box size */
+
+  private static final LruCache<List<Object>, Paragraph> CACHE =
+    new LruCache<List<Object>, Paragraph>(CACHE_CAPACITY);
+
+  /** A paragraph laid out into lines at a fitted font size. */
+
+  public static class Paragraph
+  {
+    private final Font mFont;
+    private final TextLayout[] mLines;
+    private final double mHeight;
+
+    Paragraph(Font font, TextLayout[] lines, double height)
+    {
+      mFont = font;
+      mLines = lines;
+      mHeight = height;
+    }
+
+    /** @return the font at which the paragraph fits. */
+
+    public Font getFont()
+    {
+      return mFont;
+    }
+
+    /** @return the number of lines in the paragraph. */
+
+    public int getLineCount()
+    {
+      return mLines.length;
+    }
+
+    /** @return the total height of the lines. */
+
+    public double getHeight()
+    {
+      return mHeight;
+    }
+
+    /**
+     * Draw the paragraph into a box.
+     * 
+     * @param g graphic on which to draw the paragraph
+     * @param box box to draw the paragraph into
+     * @param horizontal horizontal justification of each line
+     * @param vertical vertical justification of the paragraph
+     */
+
+    public void draw(Graphics2D g, Rectangle2D box, Justify horizontal,
+      Justify vertical)
+    {
+      double y = box.getY() + vertical.compute(box.getHeight(), mHeight);
+      for (TextLayout line: mLines)
+      {
+        y += line.getAscent();
+        line.draw(g, (float)(box.getX() +
+          horizontal.compute(box.getWidth(), line.getAdvance())), (float)y);
+        y += line.getDescent() + line.getLeading();
+      }
+    }
+  }
+
+  /**
+   * Fit a paragraph into a box and draw it.
+   * 
+   * @param g graphic on which to draw, the font of which is fitted
+   * @param text the paragraph to draw
+   * @param box box to draw the paragraph into
+   * @param horizontal horizontal justification of each line
+   * @param vertical vertical justification of the paragraph
+   */
+
+  public static void drawParagraph(Graphics2D g, String text,
+    Rectangle2D box, Justify horizontal, Justify vertical)
+  {
+    Paragraph paragraph =
+      fitParagraph(text, g.getFont(), g.getFontRenderContext(), box);
+    if (paragraph != null)
+      paragraph.draw(g, box, horizontal, vertical);
+  }
+
+  /**
+   * Find the largest size of a font at which a paragraph word wraps into a
+   * box, or return the result of a previous call with the same inputs.
+   * 
+   * @param text the paragraph
+   * @param font the font, the size of which is ignored
+   * @param frc render context in which to measure the text
+   * @param box box into which the paragraph must fit
+   * @return the paragraph laid out at the fitted size, or null if the text
+   *         will not fit even at the minimum size. Empty text fits at any
+   *         size, and yields a paragraph of no lines in the provided font.
+   */
+
+  public static Paragraph fitParagraph(String text, Font font,
+    FontRenderContext frc, Rectangle2D box)
+  {
+    if (text.length() == 0)
+      return new Paragraph(font, new TextLayout[0], 0);
+
+    // the size of the font is ignored, so it is not part of the key
+
+    Font measured = font.deriveFont(MEASURE_SIZE);
+    List<Object> key = Arrays.<Object>asList(text, measured, frc,
+      box.getWidth(), box.getHeight());
+    Paragraph paragraph = CACHE.get(key);
+    if (paragraph == null)
+    {
+      paragraph = search(text, measured, frc, box.getWidth(), box.getHeight());
+      if (paragraph != null)
+        CACHE.put(key, paragraph);
+    }
+    return paragraph;
+  }
+
+  /**
+   * Return the cache of fitted paragraphs, from which hit rate and other
+   * metrics may be read.
+   * 
+   * @return the fitted paragraph cache.
+   */
+
+  public static LruCache<?, Paragraph> getCache()
+  {
+    return CACHE;
+  }
+
+  // binary search for the largest size at which the paragraph fits
+
+  static Paragraph search(String text, Font font,
+    FontRenderContext frc, double width, double height)
+  {
+    // measure the paragraph once at the size of the font
+
+    float base = font.getSize2D();
+    AttributedCharacterIterator characters = attribute(text, font);
+    LineBreakMeasurer measurer = new LineBreakMeasurer(characters, frc);
+
+    // the text can be no larger then that at which one line fills the
+    // height, nor that at which its area fills the box
+
+    TextLayout whole = new TextLayout(characters, frc);
+    double lineHeight =
+      whole.getAscent() + whole.getDescent() + whole.getLeading();
+    double high = base * Math.min(height / lineHeight,
+      Math.sqrt(width * height / (whole.getAdvance() * lineHeight)));
+    double low = MIN_SIZE;
+    if (!fits(measurer, characters, width * base / low, height * base / low))
+      return null;
+
+    // search between the bounds
+
+    while (high - low > TOLERANCE)
+    {
+      double size = (low + high) / 2;
+      if (fits(measurer, characters, width * base / size,
+        height * base / size))
+        low = size;
+      else
+        high = size;
+    }
+
+    return layoutDown(text, font, frc, width, height, (float)low);
+  }
+
+  // lay out the paragraph for real at the given size, stepping down in the
+  // rare case that hinting makes the real layout larger then the scaled
+  // measurement
+
+  static Paragraph layoutDown(String text, Font font, FontRenderContext frc,
+    double width, double height, float start)
+  {
+    for (float size = start; size >= MIN_SIZE; size -= TOLERANCE)
+    {
+      Paragraph paragraph =
+        layout(text, font.deriveFont(size), frc, width, height);
+      if (paragraph != null)
+        return paragraph;
+    }
+    return null;
+  }
+
+  // test if the measured text wraps into a width and height
+
+  private static boolean fits(LineBreakMeasurer measurer,
+    AttributedCharacterIterator characters, double width, double height)
+  {
+    int end = characters.getEndIndex();
+    double total = 0;
+    measurer.setPosition(characters.getBeginIndex());
+    while (measurer.getPosition() < end)
+    {
+      // a word which does not fit on a line by itself does not fit
+
+      TextLayout line = measurer.nextLayout((float)width, end, true);
+      if (line == null)
+        return false;
+      total += line.getAscent() + line.getDescent() + line.getLeading();
+      if (total > height)
+        return false;
+    }
+    return true;
+  }
+
+  // lay out the text at the given font, or return null if it does not fit
+
+  static Paragraph layout(String text, Font font,
+    FontRenderContext frc, double width, double height)
+  {
+    AttributedCharacterIterator characters = attribute(text, font);
+    LineBreakMeasurer measurer = new LineBreakMeasurer(characters, frc);
+    List<TextLayout> lines = new ArrayList<TextLayout>();
+    int end = characters.getEndIndex();
+    double total = 0;
+    while (measurer.getPosition() < end)
+    {
+      TextLayout line = measurer.nextLayout((float)width, end, true);
+      if (line == null)
+        return null;
+      total += line.getAscent() + line.getDescent() + line.getLeading();
+      if (total > height)
+        return null;
+      lines.add(line);
+    }
+    return new Paragraph(font, lines.toArray(new TextLayout[lines.size()]),
+      total);
+  }
+
+  private static AttributedCharacterIterator attribute(String text, Font font)
+  {
+    AttributedString string = new AttributedString(text);
+    string.addAttribute(TextAttribute.FONT, font);
+    return string.getIterator();
+  }
+}
@@ -0,0 +1,58 @@
+package org.trebor.util;
+
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares unioning many shapes by repeated {@link Area#add(Area)} with
+ * {@link AreaUnion}, sequentially and in parallel. The shapes are clumps of
+ * overlapping circles scattered over a map, much like generated map
+ * features.
+ * 
+ * <pre>
+ * java -cp target/classes:target/test-classes \
+ *   org.trebor.util.AreaUnionBenchmark [shape-count]
+ * </pre>
+ */
+
+public class AreaUnionBenchmark
+{
+  public static void main(String[] args)
+  {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    Random random = new Random(1);
+    List<Shape> shapes = new ArrayList<Shape>(count);
+    for (int i = 0; i < count; ++i)
+    {
+      double cx = (i / 20) * 50 % 2000;
+      double cy = (i / 20) * 50 / 2000 * 50;
+      shapes.add(new Ellipse2D.Double(cx + random.nextDouble() * 20,
+        cy + random.nextDouble() * 20, 10, 10));
+    }
+
+    long start = System.nanoTime();
+    Area sequential = new Area();
+    for (Shape shape: shapes)
+      sequential.add(new Area(shape));
+    long added = System.nanoTime();
+    Shape tree = AreaUnion.union(shapes);
+    long unioned = System.nanoTime();
+    ForkJoinPool pool = new ForkJoinPool();
+    Shape parallel = AreaUnion.union(shapes, pool);
+    long parallelUnioned = System.nanoTime();
+    pool.shutdown();
+
+    System.out.printf("shapes:            %d%n", count);
+    System.out.printf("sequential add:    %8.1f ms%n", (added - start) / 1e6);
+    System.out.printf("AreaUnion:         %8.1f ms%n", (unioned - added) / 1e6);
+    System.out.printf("AreaUnion (%2d cpu): %8.1f ms%n",
+      pool.getParallelism(), (parallelUnioned - unioned) / 1e6);
+    System.out.printf("bounds: %s %s %s%n", sequential.getBounds2D(),
+      tree.getBounds2D(), parallel.getBounds2D());
+  }
+}
@@ -0,0 +1,129 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class AreaUnionTest
+{
+  @Test
+  public void clusterTest()
+  {
+    // overlapping, touching along an edge and disjoint
+
+    List<Shape> shapes = Arrays.<Shape>asList(
+      new Rectangle2D.Double(0, 0, 10, 10),
+      new Rectangle2D.Double(5, 5, 10, 10),
+      new Rectangle2D.Double(15, 0, 10, 10),
+      new Rectangle2D.Double(100, 100, 10, 10),
+      new Rectangle2D.Double(0, 50, 10, 10));
+    assertEquals(3, AreaUnion.cluster(shapes).size());
+
+    assertEquals(0, AreaUnion.cluster(Collections.<Shape>emptyList()).size());
+    assertTrue(new Area(AreaUnion.union(Collections.<Shape>emptyList()))
+      .isEmpty());
+  }
+
+  @Test
+  public void sequentialTest()
+  {
+    List<Shape> shapes = Arrays.<Shape>asList(
+      new Rectangle2D.Double(0, 0, 10, 10),
+      new Rectangle2D.Double(5, 5, 10, 10),
+      new Rectangle2D.Double(15, 0, 10, 10),
+      new Rectangle2D.Double(100, 100, 10, 10),
+      new Rectangle2D.Double(0, 50, 10, 10));
+    assertSame(shapes, AreaUnion.union(shapes));
+  }
+
+  @Test
+  public void randomTest()
+  {
+    Random random = new Random(1);
+    List<Shape> shapes = new ArrayList<Shape>();
+
+    // hearts scattered so that some overlap, some touch and some are alone
+
+    for (int i = 0; i < 300; ++i)
+    {
+      AffineTransform transform = new AffineTransform();
+      transform.translate(random.nextDouble() * 500,
+        random.nextDouble() * 500);
+      transform.rotate(random.nextDouble() * Math.PI * 2);
+      transform.scale(5 + random.nextDouble() * 30,
+        5 + random.nextDouble() * 30);
+      shapes.add(transform.createTransformedShape(ShapeTools.HEART));
+    }
+
+    assertSame(shapes, AreaUnion.union(shapes));
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try
+    {
+      assertSame(shapes, AreaUnion.union(shapes, pool));
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+  // assert a union covers the same area as adding each shape in turn
+
+  private static void assertSame(List<Shape> shapes, Shape union)
+  {
+    Area expected = new Area();
+    for (Shape shape: shapes)
+      expected.add(new Area(shape));
+    assertTrue(area(expected) > 0);
+    Area difference = new Area(union);
+    difference.exclusiveOr(expected);
+
+    // allow for the rounding of curves computed in a different order
+
+    assertTrue(area(difference) < 1e-9 * area(expected));
+  }
+
+  // the area enclosed by a shape, holes subtracted
+
+  private static double area(Shape shape)
+  {
+    double sum = 0;
+    double[] coords = new double[6];
+    double startX = 0, startY = 0, lastX = 0, lastY = 0;
+    for (PathIterator path = shape.getPathIterator(null, 0.01);
+      !path.isDone(); path.next())
+    {
+      switch (path.currentSegment(coords))
+      {
+      case PathIterator.SEG_MOVETO:
+        startX = lastX = coords[0];
+        startY = lastY = coords[1];
+        break;
+      case PathIterator.SEG_LINETO:
+        sum += lastX * coords[1] - coords[0] * lastY;
+        lastX = coords[0];
+        lastY = coords[1];
+        break;
+      case PathIterator.SEG_CLOSE:
+        sum += lastX * startY - startX * lastY;
+        lastX = startX;
+        lastY = startY;
+        break;
+      }
+    }
+    return Math.abs(sum / 2);
+  }
+}
@@ -0,0 +1,169 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Test;
+import org.trebor.util.Boilerplate.Result;
+import org.trebor.util.BoilerplateTree.IFileProcessor;
+import org.trebor.util.BoilerplateTree.Summary;
+
+public class BoilerplateCheckTest
+{
+  private static final Collection<String> BOILERPLATE = Arrays.asList("New");
+
+  @Test
+  public void checkTest() throws Exception
+  {
+    File good = write("package a;\nclass A {}\n");
+    File bad = write("/*\n * Old\n */\n\npackage a;\nclass A {}\n");
+    try
+    {
+      Boilerplate.fix(good, BOILERPLATE, Boilerplate.createMatchers());
+      BoilerplateCheck checker = new BoilerplateCheck(BOILERPLATE, null);
+      assertEquals(Result.UNCHANGED, checker.process(good));
+      assertEquals(BoilerplateCheck.STATUS_PASSED, checker.getStatus());
+      assertEquals(Result.MISSING, checker.process(bad));
+      assertEquals(BoilerplateCheck.STATUS_MISSING, checker.getStatus());
+
+      // the check agrees with fixing, which here removes a blank line
+
+      Files.write(good.toPath(), ("/*\n * New\n */\n\n\npackage a;\nclass A {}\n")
+        .getBytes());
+      assertEquals(Result.MISSING, checker.process(good));
+
+      ByteArrayOutputStream report = new ByteArrayOutputStream();
+      checker.writeReport(new PrintStream(report));
+      assertEquals(2, report.toString().split("\n").length);
+      assertTrue(report.toString().contains("missing\t" + bad.getPath() +
+        "\n"));
+    }
+    finally
+    {
+      good.delete();
+      bad.delete();
+    }
+  }
+
+  @Test
+  public void longHeaderTest() throws Exception
+  {
+    // a header longer than the mapped head is still found
+
+    StringBuilder text = new StringBuilder("/*\n");
+    for (int i = 0; i < 1000; ++i)
+      text.append(" * Line ").append(i).append("\n");
+    text.append(" */\n\npackage a;\nclass A {}\n");
+    File file = write(text.toString());
+    try
+    {
+      assertEquals(Result.MISSING, BoilerplateCheck.check(file, BOILERPLATE,
+        Boilerplate.createMatchers()));
+      Boilerplate.fix(file, BOILERPLATE, Boilerplate.createMatchers());
+      assertEquals(Result.UNCHANGED, BoilerplateCheck.check(file,
+        BOILERPLATE, Boilerplate.createMatchers()));
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void statusTest() throws Exception
+  {
+    File good = write("package a;\nclass A {}\n");
+    File script = write("#!/bin/sh\necho hello\n", ".sh");
+    try
+    {
+      Boilerplate.fix(good, BOILERPLATE, Boilerplate.createMatchers());
+      BoilerplateCheck checker = new BoilerplateCheck(BOILERPLATE, null);
+      assertEquals(Result.UNCHANGED, checker.process(good));
+
+      // a file which can not be given the boilerplate is reported as
+      // skipped, but only fails a strict check
+
+      assertEquals(Result.SKIPPED, checker.process(script));
+      assertEquals(BoilerplateCheck.STATUS_PASSED, checker.getStatus());
+      checker.setStrict(true);
+      assertEquals(BoilerplateCheck.STATUS_MISSING, checker.getStatus());
+      checker.setStrict(false);
+
+      ByteArrayOutputStream report = new ByteArrayOutputStream();
+      checker.writeReport(new PrintStream(report));
+      assertTrue(report.toString().contains("skipped\t" +
+        script.getPath() + "\n"));
+
+      // a file the tree walk could not reach fails the check
+
+      Summary summary = new Summary();
+      summary.add(Result.UNCHANGED);
+      assertEquals(BoilerplateCheck.STATUS_PASSED,
+        checker.getStatus(summary));
+      summary.add(Result.FAILED);
+      assertEquals(BoilerplateCheck.STATUS_FAILED,
+        checker.getStatus(summary));
+    }
+    finally
+    {
+      good.delete();
+      script.delete();
+    }
+  }
+
+  @Test
+  public void manifestTest() throws Exception
+  {
+    File good = write("package a;\nclass A {}\n");
+    File manifestFile = File.createTempFile("check", ".manifest");
+    manifestFile.delete();
+    try
+    {
+      Boilerplate.fix(good, BOILERPLATE, Boilerplate.createMatchers());
+      for (int run = 0; run < 2; ++run)
+      {
+        BoilerplateCheck checker = new BoilerplateCheck(BOILERPLATE, null);
+        BoilerplateManifest manifest = new BoilerplateManifest(manifestFile,
+          BOILERPLATE, Boilerplate.getLanguageMatchers().values(), false);
+        IFileProcessor processor = checker.wrap(manifest.wrap(checker));
+
+        // once checked, a file is current and is not checked again, but
+        // is still reported
+
+        assertEquals(run == 0 ? Result.UNCHANGED : Result.CURRENT,
+          processor.process(good));
+        manifest.save();
+        assertEquals(BoilerplateCheck.STATUS_PASSED, checker.getStatus());
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        checker.writeReport(new PrintStream(report));
+        assertEquals((run == 0 ? "unchanged\t" : "current\t") +
+          good.getPath() + "\n", report.toString());
+      }
+    }
+    finally
+    {
+      good.delete();
+      manifestFile.delete();
+    }
+  }
+
+  private static File write(String text) throws IOException
+  {
+    return write(text, ".java");
+  }
+
+  private static File write(String text, String suffix) throws IOException
+  {
+    File file = File.createTempFile("check", suffix);
+    Files.write(file.toPath(), text.getBytes());
+    return file;
+  }
+}
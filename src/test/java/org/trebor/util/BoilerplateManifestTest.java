@@ -0,0 +1,87 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Test;
+import org.trebor.util.Boilerplate.CommentMatcher;
+import org.trebor.util.Boilerplate.IMatcher;
+import org.trebor.util.Boilerplate.Result;
+import org.trebor.util.BoilerplateTree.IFileProcessor;
+
+public class BoilerplateManifestTest
+{
+  @Test
+  public void manifestTest() throws Exception
+  {
+    Collection<IMatcher> matchers = Boilerplate.createMatchers();
+    Collection<String> boilerplate = Arrays.asList("Copyright (C) 2008");
+    File source = File.createTempFile("source", ".java");
+    File manifestFile = File.createTempFile("manifest", ".txt");
+    manifestFile.delete();
+    try
+    {
+      write(source, "package a;");
+      IFileProcessor fixer = BoilerplateTree.fixer(boilerplate, matchers,
+        false);
+
+      BoilerplateManifest manifest =
+        new BoilerplateManifest(manifestFile, boilerplate, matchers);
+      assertEquals(Result.FIXED, manifest.wrap(fixer).process(source));
+      manifest.save();
+
+      // a later run does not process the file again
+
+      manifest = new BoilerplateManifest(manifestFile, boilerplate, matchers);
+      assertEquals(1, manifest.size());
+      assertEquals(Result.CURRENT, manifest.wrap(fixer).process(source));
+
+      // until it changes
+
+      write(source, "package a.b;");
+      assertEquals(Result.FIXED, manifest.wrap(fixer).process(source));
+      manifest.save();
+
+      // or the boilerplate changes
+
+      Collection<String> changed = Arrays.asList("Copyright (C) 2009");
+      manifest = new BoilerplateManifest(manifestFile, changed, matchers);
+      assertEquals(0, manifest.size());
+      assertEquals(Result.FIXED, manifest.wrap(
+        BoilerplateTree.fixer(changed, matchers, false)).process(source));
+      manifest.save();
+      manifest = new BoilerplateManifest(manifestFile, changed, matchers);
+      assertEquals(1, manifest.size());
+
+      // or a matcher of the same name writes a different comment
+
+      Collection<IMatcher> other = Arrays.<IMatcher>asList(
+        new CommentMatcher("java", new String[] {"/*"},
+          new String[] {" **/", ""}, " * ", "", true));
+      assertEquals(0,
+        new BoilerplateManifest(manifestFile, changed, other).size());
+
+      // or files are streamed rather then read whole
+
+      assertEquals(0, new BoilerplateManifest(manifestFile, changed,
+        matchers, true).size());
+    }
+    finally
+    {
+      source.delete();
+      manifestFile.delete();
+    }
+  }
+
+  private static void write(File file, String text) throws IOException
+  {
+    FileWriter writer = new FileWriter(file);
+    writer.write(text + "\n\n");
+    writer.close();
+  }
+}
@@ -0,0 +1,192 @@
+package org.trebor.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import org.trebor.util.Boilerplate.AMatcher;
+import org.trebor.util.Boilerplate.IMatcher;
+
+/**
+ * Compares the compiled {@link Boilerplate.JavaMatcher} with a matcher
+ * which, as JavaMatcher once did, tests each line with
+ * {@link String#matches(String)}. The corpus is either every .java file
+ * under a directory, or generated files with a license header.
+ * 
+ * <pre>
+ * java -cp target/classes:target/test-classes \
+ *   org.trebor.util.BoilerplateMatcherBenchmark [source-directory]
+ * </pre>
+ */
+
+public class BoilerplateMatcherBenchmark
+{
+  private static final int GENERATED_FILES = 20000;
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) throws IOException
+  {
+    List<Collection<String>> corpus = new ArrayList<Collection<String>>();
+    if (args.length > 0)
+      load(new File(args[0]), corpus);
+    else
+      generate(corpus);
+    System.out.printf("files: %d%n", corpus.size());
+
+    IMatcher compiled = new Boilerplate.JavaMatcher(true);
+    IMatcher regex = new RegexMatcher();
+    for (Collection<String> lines: corpus)
+      if (compiled.match(lines.iterator()) != regex.match(lines.iterator()))
+        throw new Error("matchers differ");
+
+    for (int round = 0; round < ROUNDS; ++round)
+    {
+      System.out.printf("round %d%n", round);
+      time("regex", regex, corpus);
+      time("compiled", compiled, corpus);
+    }
+  }
+
+  private static void time(String name, IMatcher matcher,
+    List<Collection<String>> corpus)
+  {
+    long start = System.nanoTime();
+    long lines = 0;
+    for (Collection<String> file: corpus)
+      lines += matcher.match(file.iterator());
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("  %-10s %8.2f ms (%d lines replaced)%n", name,
+      elapsed / 1e6, lines);
+  }
+
+  // load each java file under a directory
+
+  private static void load(File file, List<Collection<String>> corpus)
+    throws IOException
+  {
+    File[] children = file.listFiles();
+    if (children != null)
+      for (File child: children)
+        load(child, corpus);
+    else if (file.getName().endsWith(".java"))
+      corpus.add(Boilerplate.readLines(file));
+  }
+
+  // generate files with license headers of varying length
+
+  private static void generate(List<Collection<String>> corpus)
+  {
+    Random random = new Random(1);
+    for (int i = 0; i < GENERATED_FILES; ++i)
+    {
+      Collection<String> lines = new Vector<String>();
+      lines.add("/*");
+      int headerLines = 5 + random.nextInt(30);
+      for (int line = 0; line < headerLines; ++line)
+        lines.add(" * Permission is hereby granted, free of charge, to any " +
+          "person obtaining a copy " + line);
+      lines.add(" */");
+      lines.add("");
+      lines.add("package org.trebor.util;");
+      for (int line = 0; line < 50; ++line)
+        lines.add("  int value" + line + " = " + line + ";");
+      corpus.add(lines);
+    }
+  }
+
+  /** The java matcher as it was, testing lines with regular expressions. */
+
+  static class RegexMatcher extends AMatcher
+  {
+    enum State {PRE_BLANK, START, COMMENT, END, POST_BLANK, REPLACE, INSERT};
+
+    public RegexMatcher()
+    {
+      super("regex", new String[]{"/*"}, new String[]{" */", ""}, " * ", "",
+        true);
+    }
+
+    public int match(Iterator<String> i)
+    {
+      int index = 0;
+      int end = -1;
+      State state = State.PRE_BLANK;
+      if (!i.hasNext())
+        return Boilerplate.NO_MATCH;
+
+      for (String line = i.next(); i.hasNext(); /* in loop */)
+      {
+        switch (state)
+        {
+        case PRE_BLANK:
+          if (isBlank(line))
+          {
+            line = i.next();
+            ++index;
+          }
+          else
+            state = State.START;
+          break;
+
+        case START:
+          if (line.matches("^\\s*/\\*.*$"))
+          {
+            line = i.next();
+            ++index;
+            state = State.COMMENT;
+          }
+          else
+            state = State.INSERT;
+          break;
+
+        case COMMENT:
+          if (isBlank(line) ||
+            (line.matches("^\\s*\\*.*$") && !line.matches("^\\s*\\*/.*$")))
+          {
+            line = i.next();
+            ++index;
+          }
+          else
+            state = State.END;
+          break;
+
+        case END:
+          if (line.matches("^\\s*\\*/.*$"))
+          {
+            end = index;
+            line = i.next();
+            ++index;
+            state = State.POST_BLANK;
+          }
+          else
+            return Boilerplate.NO_MATCH;
+          break;
+
+        case POST_BLANK:
+          if (isBlank(line))
+          {
+            end = index;
+            line = i.next();
+            ++index;
+          }
+          else
+            state = State.REPLACE;
+          break;
+
+        case REPLACE:
+          return end + 1;
+
+        case INSERT:
+          return 0;
+        }
+      }
+
+      return Boilerplate.NO_MATCH;
+    }
+  }
+}
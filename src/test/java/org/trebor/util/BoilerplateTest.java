@@ -23,7 +23,15 @@
 package org.trebor.util;
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
 import org.junit.Test;
+import org.trebor.util.Boilerplate.Result;
 
 public class BoilerplateTest
 {
@@ -37,4 +45,118 @@ public class BoilerplateTest
     Boilerplate.main(
       new String[] {"src/test/resources/range-force.java", "src/test/resources/boilerplate-license.txt"});
   }
+
+  @Test
+  public void streamingTest() throws Exception
+  {
+    // the body has windows line endings and no final line ending, which
+    // streaming leaves as they are
+
+    File file = File.createTempFile("stream", ".java");
+    Files.write(file.toPath(),
+      "\n/*\r\n * Old\r\n */\r\n\r\npackage a;\r\nclass A {}".getBytes());
+    try
+    {
+      assertEquals(Result.FIXED, Boilerplate.fixStreaming(file,
+        Arrays.asList("New"), Boilerplate.createMatchers()));
+      assertEquals("/*\n * New\n */\n\npackage a;\r\nclass A {}",
+        new String(Files.readAllBytes(file.toPath())));
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void unchangedTest() throws Exception
+  {
+    File file = File.createTempFile("unchanged", ".java");
+    Files.write(file.toPath(), "package a;\n\nclass A {}\n".getBytes());
+    try
+    {
+      assertEquals(Result.FIXED, Boilerplate.fix(file, Arrays.asList("New"),
+        Boilerplate.createMatchers()));
+      byte[] fixed = Files.readAllBytes(file.toPath());
+
+      // a file which already has the boilerplate is not written again
+
+      assertTrue(file.setLastModified(1000000000000L));
+      assertEquals(Result.UNCHANGED, Boilerplate.fix(file,
+        Arrays.asList("New"), Boilerplate.createMatchers()));
+      assertEquals(Result.UNCHANGED, Boilerplate.fixStreaming(file,
+        Arrays.asList("New"), Boilerplate.createMatchers()));
+      assertEquals(1000000000000L, file.lastModified());
+      assertTrue(Arrays.equals(fixed, Files.readAllBytes(file.toPath())));
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void languageTest() throws Exception
+  {
+    assertFixed("config.properties", "# old\n#\n\na=1\nb=2\n",
+      "#\n# New\n#\n\na=1\nb=2\n");
+    assertFixed("page.html", "<!--\n  old\n-->\n<html>\n</html>\n",
+      "<!--\n  New\n-->\n\n<html>\n</html>\n");
+    assertFixed("query.sql", "select 1;\nselect 2;\n",
+      "--\n-- New\n--\n\nselect 1;\nselect 2;\n");
+
+    // a script must keep its interpreter line first
+
+    assertFixed("script.sh", "#!/bin/sh\necho\n", null);
+  }
+
+  @Test
+  public void blockCommentTest() throws Exception
+  {
+    // a comment which opens and closes on one line ends there, so the
+    // markup after it, and a later comment, survive
+
+    assertFixed("page.html", "<!-- Header -->\n<html>\n<body>\n<!--\n" +
+      "  note\n-->\n</body>\n</html>\n", "<!--\n  New\n-->\n\n<html>\n" +
+      "<body>\n<!--\n  note\n-->\n</body>\n</html>\n");
+
+    // the close may be anywhere in a line
+
+    assertFixed("page.xml", "<!--\n  old -->\n\n<a/>\n<b/>\n",
+      "<!--\n  New\n-->\n\n<a/>\n<b/>\n");
+    assertFixed("A.java", "/* old */\npackage a;\nclass A {}\n",
+      "/*\n * New\n */\n\npackage a;\nclass A {}\n");
+
+    // markup after the close on the same line would be lost with the
+    // comment, so the file is not matched
+
+    assertFixed("page.htm", "<!-- old --><html>\n</html>\n", null);
+  }
+
+  // fix a file, checking the result, or that it is skipped if null
+
+  private static void assertFixed(String name, String input, String expected)
+    throws Exception
+  {
+    File file = new File(System.getProperty("java.io.tmpdir"), name);
+    Files.write(file.toPath(), input.getBytes());
+    try
+    {
+      Result result = Boilerplate.fix(file, Arrays.asList("New"),
+        Boilerplate.createMatchers(file));
+      assertEquals(expected == null ? Result.SKIPPED : Result.FIXED, result);
+      assertEquals(expected == null ? input : expected,
+        new String(Files.readAllBytes(file.toPath())));
+
+      // fixing again changes nothing
+
+      if (expected != null)
+        assertEquals(Result.UNCHANGED, Boilerplate.fix(file,
+          Arrays.asList("New"), Boilerplate.createMatchers(file)));
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
 }
@@ -0,0 +1,99 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Vector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.trebor.util.Boilerplate.Result;
+import org.trebor.util.BoilerplateTree.Summary;
+
+public class BoilerplateTreeTest
+{
+  private static final Collection<String> BOILERPLATE =
+    Arrays.asList("Copyright (C) 2008", "All rights reserved.");
+
+  private File mRoot;
+
+  @Before
+  public void createTree() throws IOException
+  {
+    mRoot = File.createTempFile("tree", "");
+    mRoot.delete();
+    mRoot.mkdir();
+  }
+
+  @After
+  public void deleteTree()
+  {
+    delete(mRoot);
+  }
+
+  @Test
+  public void treeTest() throws Exception
+  {
+    File bare = write("Bare.java", "package a;", "", "class Bare {}");
+    File old = write("sub/Old.java", "/*", " * Copyright (C) 1999", " */", "",
+      "package a.sub;", "class Old {}");
+    File broken = write("sub/Broken.java", "/*", " * unclosed", "package a;",
+      "class Broken {}");
+    File generated = write("gen/Generated.java", "class Generated {}");
+    File text = write("notes.txt", "notes");
+
+    BoilerplateTree tree = new BoilerplateTree(mRoot,
+      Collections.<String>emptyList(), Arrays.asList("gen"), 2);
+    tree.setVerbose(false);
+    Summary summary = tree.fix(BOILERPLATE, Boilerplate.createMatchers());
+
+    assertEquals(2, summary.getCount(Result.FIXED));
+    assertEquals(1, summary.getCount(Result.SKIPPED));
+    assertEquals(0, summary.getCount(Result.FAILED));
+    assertEquals(3, summary.getTotal());
+
+    Collection<String> header = Arrays.asList("/*",
+      " * Copyright (C) 2008", " * All rights reserved.", " */", "");
+    assertEquals(lines(header, "package a;", "", "class Bare {}"),
+      Boilerplate.readLines(bare));
+    assertEquals(lines(header, "package a.sub;", "class Old {}"),
+      Boilerplate.readLines(old));
+    assertEquals(4, Boilerplate.readLines(broken).size());
+    assertEquals(1, Boilerplate.readLines(generated).size());
+    assertEquals(1, Boilerplate.readLines(text).size());
+  }
+
+  private File write(String path, String... lines) throws IOException
+  {
+    File file = new File(mRoot, path);
+    file.getParentFile().mkdirs();
+    FileWriter writer = new FileWriter(file);
+    for (String line: lines)
+      writer.write(line + "\n");
+    writer.close();
+    return file;
+  }
+
+  private static Collection<String> lines(Collection<String> header,
+    String... lines)
+  {
+    Collection<String> all = new Vector<String>(header);
+    all.addAll(Arrays.asList(lines));
+    return all;
+  }
+
+  private static void delete(File file)
+  {
+    File[] children = file.listFiles();
+    if (children != null)
+      for (File child: children)
+        delete(child);
+    file.delete();
+  }
+}
@@ -0,0 +1,162 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.trebor.util.Boilerplate.Result;
+
+public class BoilerplateWatcherTest
+{
+  private static final Collection<String> BOILERPLATE =
+    Arrays.asList("Copyright (C) 2008", "All rights reserved.");
+  private static final String HEADER =
+    "/*\n * Copyright (C) 2008\n * All rights reserved.\n */\n\n";
+
+  private File mRoot;
+  private BoilerplateWatcher mWatcher;
+  private Thread mThread;
+
+  @Before
+  public void startWatcher() throws Exception
+  {
+    mRoot = File.createTempFile("watch", "");
+    mRoot.delete();
+    mRoot.mkdir();
+    new File(mRoot, "gen").mkdir();
+
+    BoilerplateTree tree = new BoilerplateTree(mRoot,
+      Collections.<String>emptyList(), Arrays.asList("gen"), 2);
+    tree.setVerbose(false);
+    mWatcher = new BoilerplateWatcher(tree,
+      BoilerplateTree.fixer(BOILERPLATE, null, false), 50);
+    mThread = new Thread()
+    {
+      public void run()
+      {
+        try
+        {
+          mWatcher.watch();
+        }
+        catch (Exception ex)
+        {
+          ex.printStackTrace();
+        }
+      }
+    };
+    mThread.start();
+  }
+
+  @After
+  public void stopWatcher() throws Exception
+  {
+    mWatcher.close();
+    mThread.join();
+    delete(mRoot);
+  }
+
+  @Test
+  public void watchTest() throws Exception
+  {
+    File created = write("Created.java", "package a;\n\nclass A {}\n");
+    File nested = write("sub/deeper/Nested.java", "package a.sub;\n\nclass B {}\n");
+    File excluded = write("gen/Generated.java", "class Generated {}\n");
+    File text = write("notes.txt", "notes\n");
+
+    await(created, HEADER + "package a;\n\nclass A {}\n");
+    await(nested, HEADER + "package a.sub;\n\nclass B {}\n");
+
+    // a modified file is fixed again, the rewrite of a fixed file is not
+    // processed again
+
+    write("Created.java", "package b;\n\nclass A {}\n");
+    await(created, HEADER + "package b;\n\nclass A {}\n");
+    long deadline = System.currentTimeMillis() + 10000;
+    while (mWatcher.getSummary().getCount(Result.FIXED) < 3 &&
+      System.currentTimeMillis() < deadline)
+      Thread.sleep(20);
+    Thread.sleep(500);
+    assertEquals(3, mWatcher.getSummary().getCount(Result.FIXED));
+    assertEquals(3, mWatcher.getSummary().getTotal());
+
+    assertEquals("class Generated {}\n", read(excluded));
+    assertEquals("notes\n", read(text));
+  }
+
+  @Test
+  public void churnTest() throws Exception
+  {
+    // directories which vanish as soon as they are made do not stop the
+    // watcher
+
+    for (int i = 0; i < 200; ++i)
+    {
+      File directory = new File(mRoot, "churn" + i + "/a/b");
+      directory.mkdirs();
+      delete(new File(mRoot, "churn" + i));
+    }
+    File file = write("After.java", "package a;\n\nclass A {}\n");
+    await(file, HEADER + "package a;\n\nclass A {}\n");
+    assertTrue(mThread.isAlive());
+
+    // a deleted file is forgotten
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (mWatcher.getStampCount() == 0 &&
+      System.currentTimeMillis() < deadline)
+      Thread.sleep(20);
+    assertEquals(1, mWatcher.getStampCount());
+    assertTrue(file.delete());
+    while (mWatcher.getStampCount() > 0 &&
+      System.currentTimeMillis() < deadline)
+      Thread.sleep(20);
+    assertEquals(0, mWatcher.getStampCount());
+  }
+
+  // wait for a file to have the expected content
+
+  private void await(File file, String expected) throws Exception
+  {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!expected.equals(read(file)) &&
+      System.currentTimeMillis() < deadline)
+      Thread.sleep(20);
+    assertEquals(expected, read(file));
+  }
+
+  private File write(String path, String content) throws IOException
+  {
+    File file = new File(mRoot, path);
+    file.getParentFile().mkdirs();
+    FileWriter writer = new FileWriter(file);
+    writer.write(content);
+    writer.close();
+    return file;
+  }
+
+  private static String read(File file) throws IOException
+  {
+    StringBuilder content = new StringBuilder();
+    for (String line: Boilerplate.readLines(file))
+      content.append(line).append('\n');
+    return content.toString();
+  }
+
+  private static void delete(File file)
+  {
+    File[] children = file.listFiles();
+    if (children != null)
+      for (File child: children)
+        delete(child);
+    file.delete();
+  }
+}
@@ -0,0 +1,172 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.swing.JPanel;
+
+import org.junit.Test;
+import org.trebor.util.FrameRecorder.Backpressure;
+
+public class FrameRecorderTest
+{
+  @Test
+  public void recordTest() throws Exception
+  {
+    File directory = File.createTempFile("frames", "");
+    assertTrue(directory.delete());
+    assertTrue(directory.mkdir());
+
+    JPanel panel = new JPanel();
+    panel.setSize(40, 30);
+    FrameRecorder recorder =
+      new FrameRecorder(directory, "frame", 2, 2, Backpressure.BLOCK);
+    Color[] colors = {Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW};
+    for (Color color: colors)
+    {
+      panel.setBackground(color);
+      assertTrue(recorder.capture(panel));
+    }
+    recorder.close();
+
+    assertEquals(colors.length, recorder.getFrameCount());
+    assertEquals(colors.length, recorder.getWrittenCount());
+    assertEquals(0, recorder.getDroppedCount());
+    assertEquals(0, recorder.getPendingCount());
+
+    // each file holds the frame captured in its place in the sequence
+
+    for (int i = 0; i < colors.length; ++i)
+    {
+      File file = recorder.getFrameFile(i);
+      BufferedImage image = ImageIO.read(file);
+      assertEquals(colors[i].getRGB(), image.getRGB(20, 15));
+      assertTrue(file.delete());
+    }
+    assertTrue(directory.delete());
+  }
+
+  @Test
+  public void failedCaptureTest() throws Exception
+  {
+    File directory = createDirectory();
+    JPanel broken = new JPanel()
+    {
+      private static final long serialVersionUID = 1L;
+
+      public void paint(Graphics g)
+      {
+        throw new IllegalArgumentException("broken");
+      }
+    };
+    broken.setSize(40, 30);
+    FrameRecorder recorder =
+      new FrameRecorder(directory, "frame", 1, 1, Backpressure.BLOCK);
+
+    // each failure gives back its place in the ring, so a full ring of
+    // failures does not block the captures which follow
+
+    for (int i = 0; i < 3; ++i)
+    {
+      try
+      {
+        recorder.capture(broken);
+        fail("capture should fail");
+      }
+      catch (IllegalArgumentException ex)
+      {
+        assertEquals("broken", ex.getMessage());
+      }
+      assertEquals(0, recorder.getPendingCount());
+    }
+    JPanel panel = new JPanel();
+    panel.setSize(40, 30);
+    assertTrue(recorder.capture(panel));
+    recorder.close();
+    assertEquals(1, recorder.getWrittenCount());
+
+    try
+    {
+      recorder.capture(panel);
+      fail("capture after close should fail");
+    }
+    catch (IllegalStateException ex)
+    {
+      // expected
+    }
+    assertEquals(0, recorder.getPendingCount());
+    delete(directory);
+  }
+
+  @Test
+  public void closeRaceTest() throws Exception
+  {
+    File directory = createDirectory();
+    final FrameRecorder recorder =
+      new FrameRecorder(directory, "frame", 2, 2, Backpressure.BLOCK);
+    final BufferedImage image =
+      new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+    final AtomicInteger recorded = new AtomicInteger();
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; ++i)
+    {
+      threads[i] = new Thread()
+      {
+        public void run()
+        {
+          try
+          {
+            while (true)
+            {
+              recorder.record(image);
+              recorded.incrementAndGet();
+            }
+          }
+          catch (IllegalStateException ex)
+          {
+            // the recorder was closed
+          }
+          catch (InterruptedException ex)
+          {
+            fail("interrupted");
+          }
+        }
+      };
+      threads[i].start();
+    }
+    Thread.sleep(100);
+    recorder.close();
+    for (Thread thread: threads)
+      thread.join();
+
+    // every frame recorded was written, and none is left in the ring
+
+    assertEquals(recorded.get(), recorder.getFrameCount());
+    assertEquals(recorded.get(), recorder.getWrittenCount());
+    assertEquals(0, recorder.getPendingCount());
+    delete(directory);
+  }
+
+  private static File createDirectory() throws Exception
+  {
+    File directory = File.createTempFile("frames", "");
+    assertTrue(directory.delete());
+    assertTrue(directory.mkdir());
+    return directory;
+  }
+
+  private static void delete(File directory)
+  {
+    for (File file: directory.listFiles())
+      file.delete();
+    directory.delete();
+  }
+}
@@ -0,0 +1,80 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Arc2D;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class GlyphCacheTest
+{
+  @Test
+  public void basicTest()
+  {
+    Font font = new Font("Serif", Font.PLAIN, 24);
+    FontRenderContext frc = new FontRenderContext(null, true, true);
+    GlyphVector gv = font.createGlyphVector(frc, "abc");
+    GlyphCache cache = new GlyphCache(2);
+
+    GlyphCache.Glyph a = cache.get(gv, 0);
+    assertSame(a, cache.get(gv, 0));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    // the outline is relative to the glyph origin
+
+    assertEquals(gv.getGlyphOutline(0).getBounds2D().getWidth(),
+      a.getOutline().getBounds2D().getWidth(), 0.001);
+
+    // adding a third glyph evicts the least recently used
+
+    cache.get(gv, 1);
+    cache.get(gv, 0);
+    cache.get(gv, 2);
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictions());
+    assertSame(a, cache.get(gv, 0));
+    assertEquals(3, cache.getMisses());
+  }
+
+  @Test
+  public void sharedTest()
+  {
+    Font font = new Font("Serif", Font.PLAIN, 31);
+    FontRenderContext frc = LabelLayout.DEFAULT_FONT_RENDER_CONTEXT;
+    GlyphVector gv = font.createGlyphVector(frc, "shared");
+    Arc2D arc = new Arc2D.Double(0, 0, 400, 300, 10, 160, Arc2D.OPEN);
+    GlyphCache.SHARED.clear();
+    long hits = GlyphCache.SHARED.getHits();
+    long misses = GlyphCache.SHARED.getMisses();
+
+    // laying out along a path fetches the outlines through the shared cache
+
+    GlyphsOnPath.glyphsAlongPath(gv, arc.getPathIterator(null),
+      Justify.CENTER);
+    assertEquals(6, GlyphCache.SHARED.size());
+    assertEquals(misses + 6, GlyphCache.SHARED.getMisses());
+
+    // so laying out the same glyphs again, in parallel, only hits
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try
+    {
+      new LabelLayout(pool).layoutShapes(Collections.singletonList(
+        new LabelLayout.Label("shared", font, arc, Justify.CENTER)));
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+    assertEquals(misses + 6, GlyphCache.SHARED.getMisses());
+    assertTrue(GlyphCache.SHARED.getHits() >= hits + 6);
+  }
+}
@@ -0,0 +1,60 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Vector;
+
+import org.junit.Test;
+import org.trebor.util.GlyphsOnPath.GlyphTransforms;
+
+public class GlyphsOnPathTest
+{
+  @Test
+  public void outputModeTest()
+  {
+    Font font = new Font("Serif", Font.PLAIN, 24);
+    FontRenderContext frc = new FontRenderContext(null, true, true);
+    GlyphVector gv = font.createGlyphVector(frc, "along the arc");
+    Shape arc = new Arc2D.Double(0, 0, 400, 300, 10, 160, Arc2D.OPEN);
+    PathTool path = new PathTool(arc, 0.5);
+
+    Vector<Shape> shapes =
+      GlyphsOnPath.glyphsAlongPath(gv, path, Justify.CENTER);
+    GlyphTransforms transforms =
+      GlyphsOnPath.glyphTransforms(gv, path, Justify.CENTER);
+    Path2D.Float merged = GlyphsOnPath.glyphsAlongPath(gv, path,
+      Justify.CENTER, new Path2D.Float());
+
+    // the spaces are not placed
+
+    assertEquals(11, shapes.size());
+    assertEquals(11, transforms.getCount());
+
+    // each output mode places the glyphs in the same place
+
+    Rectangle2D union = null;
+    for (int i = 0; i < shapes.size(); ++i)
+    {
+      Rectangle2D bounds = shapes.get(i).getBounds2D();
+      Rectangle2D other = transforms.getTransform(i).createTransformedShape(
+        gv.getFont().createGlyphVector(frc,
+          new int[] {transforms.getGlyphCodes()[i]}).getGlyphOutline(0))
+        .getBounds2D();
+      assertEquals(bounds.getX(), other.getX(), 0.001);
+      assertEquals(bounds.getY(), other.getY(), 0.001);
+      if (union == null)
+        union = bounds;
+      else
+        union.add(bounds);
+    }
+    assertEquals(union.getWidth(), merged.getBounds2D().getWidth(), 0.001);
+    assertEquals(union.getHeight(), merged.getBounds2D().getHeight(), 0.001);
+  }
+}
@@ -0,0 +1,58 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import org.junit.Test;
+
+public class ImagePoolTest
+{
+  @Test
+  public void reuseTest()
+  {
+    ImagePool pool = new ImagePool(1);
+    BufferedImage image = pool.acquire(10, 10, BufferedImage.TYPE_INT_ARGB);
+    pool.release(image);
+    assertSame(image, pool.acquire(10, 10, BufferedImage.TYPE_INT_ARGB));
+
+    // a different size is not satisfied by the idle image
+
+    pool.release(image);
+    pool.acquire(20, 10, BufferedImage.TYPE_INT_ARGB);
+    assertEquals(2, pool.getCreated());
+    assertEquals(1, pool.getReused());
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  @Test
+  public void paintImageTest()
+  {
+    JPanel panel = new JPanel(new BorderLayout());
+    panel.setBackground(Color.RED);
+    JLabel label = new JLabel("label");
+    label.setOpaque(true);
+    label.setBackground(Color.BLUE);
+    panel.add(label, BorderLayout.NORTH);
+    panel.setSize(200, 100);
+
+    ImagePool pool = new ImagePool(1);
+    BufferedImage image = ShapeTools.paintImage(panel, pool);
+    assertEquals(200, image.getWidth());
+    assertEquals(Color.BLUE.getRGB(), image.getRGB(199, 1));
+    assertEquals(Color.RED.getRGB(), image.getRGB(100, 99));
+
+    // a pooled image is cleared before it is painted again
+
+    pool.release(image);
+    panel.setBackground(Color.GREEN);
+    assertSame(image, ShapeTools.paintImage(panel, pool));
+    assertEquals(Color.GREEN.getRGB(), image.getRGB(100, 99));
+  }
+}
@@ -0,0 +1,92 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Arc2D;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.trebor.util.GlyphsOnPath.GlyphTransforms;
+import org.trebor.util.LabelLayout.Label;
+
+public class LabelLayoutTest
+{
+  @Test
+  public void parallelTest()
+  {
+    Font font = new Font("Serif", Font.PLAIN, 24);
+    FontRenderContext frc = LabelLayout.DEFAULT_FONT_RENDER_CONTEXT;
+    Justify[] justifications = {Justify.LEFT, Justify.CENTER, Justify.RIGHT};
+
+    // enough labels to split the work, alternating text and glyph vectors
+
+    Vector<Label> labels = new Vector<Label>();
+    for (int i = 0; i < LabelLayout.THRESHOLD * 3 + 5; ++i)
+    {
+      String text = "label " + i;
+      Shape arc = new Arc2D.Double(i, i * 2, 300 + i, 200, 10 + i, 160,
+        Arc2D.OPEN);
+      Justify justification = justifications[i % justifications.length];
+      labels.add(i % 2 == 0
+        ? new Label(text, font, arc, justification)
+        : new Label(font.createGlyphVector(frc, text), arc, justification));
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try
+    {
+      LabelLayout layout = new LabelLayout(pool);
+      List<GlyphTransforms> transforms = layout.layoutTransforms(labels);
+      List<Vector<Shape>> shapes = layout.layoutShapes(labels);
+      assertEquals(labels.size(), transforms.size());
+      assertEquals(labels.size(), shapes.size());
+
+      // each result matches laying out its own label sequentially
+
+      for (int i = 0; i < labels.size(); ++i)
+      {
+        Label label = labels.get(i);
+        GlyphVector gv = label.getGlyphVector(frc);
+
+        GlyphTransforms expected = GlyphsOnPath.glyphTransforms(gv,
+          label.getPath().getPathIterator(null), label.getJustification());
+        assertEquals(expected.getCount(), transforms.get(i).getCount());
+        assertTrue(Arrays.equals(expected.getGlyphCodes(),
+          transforms.get(i).getGlyphCodes()));
+        assertTrue(Arrays.equals(expected.getMatrices(),
+          transforms.get(i).getMatrices()));
+
+        Vector<Shape> expectedShapes = GlyphsOnPath.glyphsAlongPath(gv,
+          label.getPath().getPathIterator(null), label.getJustification());
+        assertEquals(expectedShapes.size(), shapes.get(i).size());
+        for (int j = 0; j < expectedShapes.size(); ++j)
+          assertEquals(outline(expectedShapes.get(j)),
+            outline(shapes.get(i).get(j)));
+      }
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+  /** the segments of a shape as a comparable list */
+
+  private static List<String> outline(Shape shape)
+  {
+    Vector<String> segments = new Vector<String>();
+    double[] coords = new double[6];
+    for (PathIterator pi = shape.getPathIterator(null); !pi.isDone(); pi.next())
+      segments.add(pi.currentSegment(coords) + Arrays.toString(coords));
+    return segments;
+  }
+}
@@ -0,0 +1,70 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Font;
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.trebor.util.LabelLayout.Label;
+import org.trebor.util.LabelPlacer.Candidate;
+import org.trebor.util.LabelPlacer.Placement;
+
+public class LabelPlacerTest
+{
+  private final Font mFont = new Font("Serif", Font.PLAIN, 12);
+
+  private Label label(String text, double y)
+  {
+    return new Label(text, mFont, new Line2D.Double(0, y, 400, y),
+      Justify.LEFT);
+  }
+
+  @Test
+  public void collisionTest()
+  {
+    LabelPlacer placer = new LabelPlacer(16, 1);
+
+    assertNotNull(placer.place(label("Main Street", 0)));
+    assertNull(placer.place(label("Main Street", 0)));
+    assertNotNull(placer.place(label("Main Street", 100)));
+
+    // with a shift available the colliding label moves along its path
+
+    placer.setShifts(200);
+    Placement placement = placer.place(label("Main Street", 0));
+    assertNotNull(placement);
+    assertEquals(200, placement.getShift(), 0);
+  }
+
+  @Test
+  public void priorityTest()
+  {
+    LabelPlacer placer = new LabelPlacer(16, 1);
+    List<Candidate> candidates = new ArrayList<Candidate>();
+    candidates.add(new Candidate(label("Low", 0), 1));
+    candidates.add(new Candidate(label("High", 0), 2));
+
+    List<Placement> placements = placer.placeAll(candidates);
+    assertNull(placements.get(0));
+    assertNotNull(placements.get(1));
+  }
+
+  @Test
+  public void shiftTest()
+  {
+    Justify left = LabelPlacer.shift(Justify.LEFT, 10);
+    assertEquals(left, LabelPlacer.shift(Justify.LEFT, 10));
+    assertEquals(left.hashCode(),
+      LabelPlacer.shift(Justify.LEFT, 10).hashCode());
+    assertFalse(left.equals(LabelPlacer.shift(Justify.LEFT, 20)));
+    assertFalse(left.equals(Justify.LEFT));
+    assertFalse(Justify.LEFT.equals(left));
+    assertEquals(10, left.compute(100, 50), 0);
+  }
+}
@@ -0,0 +1,39 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LruCacheTest
+{
+  @Test
+  public void weightTest()
+  {
+    LruCache<String, String> cache = new LruCache<String, String>(10)
+    {
+      protected long weigh(String key, String value)
+      {
+        return value.length();
+      }
+    };
+
+    cache.put("a", "aaaa");
+    cache.put("b", "bbbb");
+    assertEquals("aaaa", cache.get("a"));
+
+    // b is now the least recently used and is evicted to make room
+
+    cache.put("c", "cccc");
+    assertNull(cache.get("b"));
+    assertEquals(8, cache.getWeight());
+    assertEquals(1, cache.getEvictions());
+    assertEquals(0.5, cache.getHitRate(), 0);
+
+    // entries heavier than the cache are not retained
+
+    cache.put("d", "ddddddddddd");
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getWeight());
+  }
+}
@@ -4,6 +4,10 @@ import static org.junit.Assert.assertEquals;
 
 import java.awt.Shape;
 import java.awt.geom.Arc2D;
+import java.awt.geom.GeneralPath;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 import org.trebor.util.PathTool.PathPoint;
@@ -33,4 +37,41 @@ public class PathToolTest
     
     assertEquals(Math.PI * 5, pt.getLength(), 0.01);
   }
+
+  @Test
+  public void parallelTest()
+  {
+    // build a long random walk which spans many chunks
+
+    Random random = new Random(42);
+    GeneralPath path = new GeneralPath();
+    path.moveTo(0f, 0f);
+    for (int i = 0; i < PathTool.CHUNK_SIZE * 5 + 17; ++i)
+      path.lineTo(random.nextFloat() * 1000, random.nextFloat() * 1000);
+    path.closePath();
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try
+    {
+      PathTool sequential = new PathTool(path, 0);
+      PathTool parallel = new PathTool(path, 0, executor);
+
+      assertEquals(sequential.getSegmentCount(), parallel.getSegmentCount());
+      assertEquals(sequential.getLength(), parallel.getLength(), 0);
+      for (int i = 0; i < sequential.getSegmentCount(); ++i)
+        assertEquals(sequential.getSegmentExtent(i),
+          parallel.getSegmentExtent(i), 0);
+
+      for (int i = 0; i <= 100; ++i)
+      {
+        double extent = sequential.getLength() * i / 100;
+        assertEquals(sequential.getPathPoint(extent),
+          parallel.getPathPoint(extent));
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
 }
@@ -0,0 +1,113 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Vector;
+
+import org.junit.After;
+import org.junit.Test;
+import org.trebor.util.ScaleText.Fit;
+
+public class ScaleTextTest
+{
+  private static final String[] LINES = {"Main Street", "North"};
+
+  private final Font mFont = new Font("Serif", Font.PLAIN, 12);
+
+  @After
+  public void clearCaches()
+  {
+    ScaleText.getFitCache().clear();
+    ScaleText.getSpriteCache().clear();
+  }
+
+  @Test
+  public void fitCacheTest()
+  {
+    FontRenderContext frc = TextMeasure.PLAIN_FONT_RENDER_CONTEXT;
+    Rectangle2D box = new Rectangle2D.Double(10, 20, 200, 80);
+    Fit fit = ScaleText.fitMessage(mFont, frc, LINES, box);
+    assertSame(fit, ScaleText.fitMessage(mFont, frc, LINES.clone(),
+      new Rectangle2D.Double(50, 50, 200, 80)));
+
+    // the cached fit matches a direct fit and measurement
+
+    Font scaled = ScaleText.scaleFont(mFont, frc, LINES, box);
+    Vector<Rectangle2D> lineBounds = new Vector<Rectangle2D>();
+    Rectangle2D bounds =
+      ScaleText.computeMessageBounds(scaled, frc, LINES, lineBounds);
+    assertEquals(scaled, fit.getFont());
+    assertEquals(bounds, fit.getMessageBounds());
+    for (int i = 0; i < LINES.length; ++i)
+      assertEquals(lineBounds.get(i), fit.getLineBounds(i));
+  }
+
+  @Test
+  public void spriteTest()
+  {
+    Rectangle2D box = new Rectangle2D.Double(10.5, 20.25, 180, 70);
+    for (Justify justify: Arrays.asList(Justify.LEFT, Justify.CENTER,
+      Justify.RIGHT))
+    {
+      BufferedImage direct = draw(box, justify, false);
+      assertEquals(pixels(direct), pixels(draw(box, justify, true)));
+
+      // a second draw uses the cached sprite
+
+      long hits = ScaleText.getSpriteCache().getHits();
+      assertEquals(pixels(direct), pixels(draw(box, justify, true)));
+      assertTrue(ScaleText.getSpriteCache().getHits() > hits);
+    }
+  }
+
+  @Test
+  public void spriteEvictionTest()
+  {
+    // sprites of these boxes each take more than half of the cache
+
+    BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.setFont(mFont);
+    g.setColor(Color.BLACK);
+    for (int i = 0; i < 4; ++i)
+      ScaleText.drawCachedMessage(g, new String[] {"Sprite " + i},
+        new Rectangle2D.Double(0, 0, 1800, 1800), Justify.CENTER,
+        Justify.CENTER);
+    g.dispose();
+
+    LruCache<?, ?> cache = ScaleText.getSpriteCache();
+    assertTrue(cache.getWeight() <= ScaleText.SPRITE_CACHE_BYTES);
+    assertTrue(cache.size() < 4);
+    assertTrue(cache.getEvictions() > 0);
+  }
+
+  private BufferedImage draw(Rectangle2D box, Justify justify, boolean cached)
+  {
+    BufferedImage image =
+      new BufferedImage(220, 120, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    g.setFont(mFont);
+    g.setColor(Color.BLUE);
+    if (cached)
+      ScaleText.drawCachedMessage(g, LINES, box, justify, justify);
+    else
+      ScaleText.drawMessage(g, LINES, box, justify, justify);
+    g.dispose();
+    return image;
+  }
+
+  private static String pixels(BufferedImage image)
+  {
+    return Arrays.toString(image.getRGB(0, 0, image.getWidth(),
+      image.getHeight(), null, 0, image.getWidth()));
+  }
+}
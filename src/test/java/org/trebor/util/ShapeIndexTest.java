@@ -0,0 +1,93 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ShapeIndexTest
+{
+  @Test
+  public void hitTest()
+  {
+    ShapeIndex<Shape> index = new ShapeIndex<Shape>();
+    Shape lower = new Rectangle2D.Double(0, 0, 10, 10);
+    Shape upper = new Ellipse2D.Double(5, 5, 10, 10);
+    index.add(lower);
+    index.add(upper);
+
+    assertSame(upper, index.getShapeAt(10, 10));
+    assertSame(lower, index.getShapeAt(1, 1));
+
+    // inside the bounds of the ellipse but outside the ellipse
+
+    assertNull(index.getShapeAt(14.5, 5.5));
+
+    assertTrue(index.remove(upper));
+    assertFalse(index.remove(upper));
+    assertSame(lower, index.getShapeAt(9, 9));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void bruteForceTest()
+  {
+    Random random = new Random(1);
+    ShapeIndex<Shape> index = new ShapeIndex<Shape>();
+    List<Shape> shapes = new ArrayList<Shape>();
+
+    for (int i = 0; i < 2000; ++i)
+    {
+      AffineTransform transform = new AffineTransform();
+      transform.translate(random.nextDouble() * 1000,
+        random.nextDouble() * 1000);
+      transform.rotate(random.nextDouble() * Math.PI * 2);
+      transform.scale(5 + random.nextDouble() * 20, 5 + random.nextDouble() * 20);
+      Shape shape = transform.createTransformedShape(ShapeTools.HEART);
+      shapes.add(shape);
+      index.add(shape);
+
+      // remove some shapes along the way
+
+      if (random.nextInt(4) == 0)
+      {
+        Shape victim = shapes.remove(random.nextInt(shapes.size()));
+        assertTrue(index.remove(victim));
+      }
+    }
+
+    assertEquals(shapes.size(), index.size());
+    assertTrue("height " + index.getHeight(), index.getHeight() < 30);
+
+    for (int i = 0; i < 500; ++i)
+    {
+      double x = random.nextDouble() * 1000;
+      double y = random.nextDouble() * 1000;
+      List<Shape> expected = new ArrayList<Shape>();
+      for (Shape shape: shapes)
+        if (shape.contains(x, y))
+          expected.add(shape);
+      assertEquals(expected, index.getShapesAt(x, y));
+      assertSame(expected.isEmpty() ? null : expected.get(expected.size() - 1),
+        index.getShapeAt(x, y));
+
+      Rectangle2D rectangle = new Rectangle2D.Double(x, y, 30, 20);
+      expected.clear();
+      for (Shape shape: shapes)
+        if (shape.intersects(rectangle))
+          expected.add(shape);
+      assertEquals(expected, index.getShapesIntersecting(rectangle));
+    }
+  }
+}
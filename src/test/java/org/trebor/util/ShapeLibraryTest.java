@@ -0,0 +1,78 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ShapeLibraryTest
+{
+  @Test
+  public void roundTripTest() throws Exception
+  {
+    Path2D.Double quads = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+    quads.moveTo(0, 0);
+    quads.quadTo(1, 2, 3, 4);
+    quads.lineTo(5, 0);
+    quads.closePath();
+
+    Map<String, Shape> shapes = new LinkedHashMap<String, Shape>();
+    shapes.put("heart", ShapeTools.HEART);
+    shapes.put("cat", ShapeTools.CAT);
+    shapes.put("fish", ShapeTools.FISH);
+    shapes.put("quads", quads);
+    shapes.put("empty", new Path2D.Float());
+
+    File file = File.createTempFile("shapes", ".shpl");
+    try
+    {
+      ShapeLibrary.write(file, shapes);
+      ShapeLibrary library = ShapeLibrary.open(file);
+
+      assertEquals(Arrays.asList("heart", "cat", "fish", "quads", "empty"),
+        library.getNames());
+      for (Map.Entry<String, Shape> entry: shapes.entrySet())
+        assertSamePath(entry.getValue(), library.getShape(entry.getKey()));
+
+      // shapes are read once
+
+      assertSame(library.getShape("cat"), library.getShape(1));
+      assertNull(library.getShape("dog"));
+    }
+    finally
+    {
+      assertTrue(file.delete());
+    }
+  }
+
+  // compare two paths segment by segment, at float precision
+
+  private static void assertSamePath(Shape expected, Shape actual)
+  {
+    PathIterator e = expected.getPathIterator(null);
+    PathIterator a = actual.getPathIterator(null);
+    assertEquals(e.getWindingRule(), a.getWindingRule());
+    float[] ec = new float[6];
+    float[] ac = new float[6];
+    for (; !e.isDone(); e.next(), a.next())
+    {
+      assertFalse(a.isDone());
+      Arrays.fill(ec, 0);
+      Arrays.fill(ac, 0);
+      assertEquals(e.currentSegment(ec), a.currentSegment(ac));
+      assertEquals(Arrays.toString(ec), Arrays.toString(ac));
+    }
+    assertTrue(a.isDone());
+  }
+}
@@ -0,0 +1,128 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShapeSpritesTest
+{
+  private BufferedImage mImage;
+  private Graphics2D mGraphics;
+
+  @Before
+  public void createGraphics()
+  {
+    mImage = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+    mGraphics = mImage.createGraphics();
+  }
+
+  @After
+  public void disposeGraphics()
+  {
+    mGraphics.dispose();
+  }
+
+  @Test
+  public void levelTest()
+  {
+    assertEquals(ShapeSprites.MIN_SIZE, ShapeSprites.level(0.5));
+    assertEquals(8, ShapeSprites.level(8));
+    assertEquals(16, ShapeSprites.level(8.01));
+    assertEquals(128, ShapeSprites.level(100));
+    assertEquals(ShapeSprites.MAX_SIZE, ShapeSprites.level(10000));
+
+    // sizes which share a level share a sprite
+
+    ShapeSprites sprites = new ShapeSprites(1 << 20, 8);
+    Shape circle = circle();
+    sprites.draw(mGraphics, circle, 100, 100, 20, Color.RED, 0);
+    sprites.draw(mGraphics, circle, 100, 100, 30, Color.RED, 0);
+    sprites.draw(mGraphics, circle, 100, 100, 40, Color.RED, 0);
+    assertEquals(2, sprites.getCache().size());
+    assertEquals(weight(32) + weight(64), sprites.getCache().getWeight());
+
+    // the shape is drawn at the requested size, not that of the level
+
+    assertEquals(Color.RED.getRGB(), mImage.getRGB(100, 100));
+    assertEquals(0, mImage.getRGB(100 + 25, 100));
+  }
+
+  @Test
+  public void exactSizeTest()
+  {
+    ShapeSprites sprites = new ShapeSprites(1 << 20, 8, true);
+    Shape circle = circle();
+    sprites.draw(mGraphics, circle, 100, 100, 20, Color.RED, 0);
+    sprites.draw(mGraphics, circle, 100, 100, 19.5, Color.RED, 0);
+    sprites.draw(mGraphics, circle, 100, 100, 30, Color.RED, 0);
+    assertEquals(2, sprites.getCache().size());
+    assertEquals(1, sprites.getCache().getHits());
+    assertEquals(weight(20) + weight(30), sprites.getCache().getWeight());
+  }
+
+  @Test
+  public void rotationTest()
+  {
+    ShapeSprites sprites = new ShapeSprites(1 << 20, 8);
+    Shape square = new Rectangle2D.Double(-0.5, -0.5, 1, 1);
+
+    // rotations round to the nearest of eight 45 degree buckets
+
+    double[] degrees = {0, 10, 360, -5, 30, 45, -45, 315, 675};
+    for (double rotation: degrees)
+      sprites.draw(mGraphics, square, 100, 100, 16, Color.BLUE, rotation);
+    assertEquals(3, sprites.getCache().size());
+    assertEquals(3, sprites.getCache().getMisses());
+    assertEquals(degrees.length - 3, sprites.getCache().getHits());
+  }
+
+  @Test
+  public void identityTest()
+  {
+    // room for exactly one sprite
+
+    ShapeSprites sprites = new ShapeSprites(weight(16), 8);
+    Shape first = circle();
+    Shape second = circle();
+
+    // equal shapes are distinct sprites
+
+    sprites.draw(mGraphics, first, 100, 100, 16, Color.RED, 0);
+    sprites.draw(mGraphics, first, 100, 100, 16, Color.RED, 0);
+    sprites.draw(mGraphics, second, 100, 100, 16, Color.RED, 0);
+    assertEquals(first, second);
+    assertEquals(1, sprites.getCache().getHits());
+    assertEquals(1, sprites.getCache().getEvictions());
+    assertEquals(1, sprites.getCache().size());
+
+    // the first shape was evicted to make room for the second
+
+    sprites.draw(mGraphics, first, 100, 100, 16, Color.RED, 0);
+    assertEquals(1, sprites.getCache().getHits());
+    assertEquals(2, sprites.getCache().getEvictions());
+    assertTrue(sprites.getCache().getWeight() <= weight(16));
+  }
+
+  private static Shape circle()
+  {
+    return new Ellipse2D.Double(-0.5, -0.5, 1, 1);
+  }
+
+  // bytes of a sprite rasterized at a given size
+
+  private static long weight(int size)
+  {
+    int extent = (int)Math.ceil(size * Math.sqrt(2)) + 2 * ShapeSprites.PADDING;
+    return 4L * extent * extent;
+  }
+}
@@ -0,0 +1,110 @@
+package org.trebor.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * Measures the cost of loading {@link ShapeTools} with its stock shapes
+ * created lazily, and with them created eagerly, as they were before. Each
+ * measurement is made in a fresh JVM, as the class may only be loaded once;
+ * the eager cost is the class load followed immediately by forcing every
+ * lazy shape, which is the work the eager static initializer did.
+ * 
+ * <pre>
+ * java -cp target/classes:target/test-classes \
+ *   org.trebor.util.ShapeToolsStartupBenchmark
+ * </pre>
+ */
+
+public class ShapeToolsStartupBenchmark
+{
+  private static final int RUNS = 11;
+  private static final String LAZY = "lazy";
+  private static final String EAGER = "eager";
+
+  public static void main(String[] args) throws Exception
+  {
+    // a child JVM measures one load and prints it
+
+    if (args.length == 1)
+    {
+      System.out.println(load(EAGER.equals(args[0])));
+      return;
+    }
+
+    long[] lazy = new long[RUNS];
+    long[] eager = new long[RUNS];
+    for (int run = 0; run < RUNS; ++run)
+    {
+      lazy[run] = fork(LAZY);
+      eager[run] = fork(EAGER);
+    }
+
+    System.out.printf("class load (lazy shapes):  %8.3f ms%n",
+      median(lazy) / 1e6);
+    System.out.printf("class load (eager shapes): %8.3f ms%n",
+      median(eager) / 1e6);
+    System.out.printf("median of %d fresh JVMs each%n", RUNS);
+  }
+
+  /** load the class, forcing every stock shape if eager */
+
+  private static long load(boolean eager) throws Exception
+  {
+    long start = System.nanoTime();
+    Class.forName("org.trebor.util.ShapeTools");
+    if (eager)
+    {
+      ShapeTools.LazyShape[] shapes =
+      {
+        (ShapeTools.LazyShape)ShapeTools.TRIANGLE,
+        (ShapeTools.LazyShape)ShapeTools.SQUARE,
+        (ShapeTools.LazyShape)ShapeTools.PENTAGON,
+        (ShapeTools.LazyShape)ShapeTools.HEXAGON,
+        (ShapeTools.LazyShape)ShapeTools.CIRCLE,
+        (ShapeTools.LazyShape)ShapeTools.HEART,
+        (ShapeTools.LazyShape)ShapeTools.STAR,
+        (ShapeTools.LazyShape)ShapeTools.CAT,
+        (ShapeTools.LazyShape)ShapeTools.DOG,
+        (ShapeTools.LazyShape)ShapeTools.FISH,
+      };
+      for (ShapeTools.LazyShape shape: shapes)
+        shape.get();
+    }
+    return System.nanoTime() - start;
+  }
+
+  /** measure one load in a fresh JVM */
+
+  private static long fork(String mode) throws Exception
+  {
+    String java = System.getProperty("java.home") + File.separator + "bin"
+      + File.separator + "java";
+    Process process = new ProcessBuilder(java, "-Djava.awt.headless=true",
+      "-cp", System.getProperty("java.class.path"),
+      ShapeToolsStartupBenchmark.class.getName(), mode)
+      .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    BufferedReader reader = new BufferedReader(
+      new InputStreamReader(process.getInputStream()));
+    try
+    {
+      String line = reader.readLine();
+      if (process.waitFor() != 0 || line == null)
+        throw new Error("benchmark JVM failed: " + line);
+      return Long.parseLong(line.trim());
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  private static long median(long[] times)
+  {
+    long[] sorted = times.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+}
@@ -0,0 +1,89 @@
+package org.trebor.util;
+
+import java.awt.Shape;
+import java.awt.geom.Area;
+
+/**
+ * Compares a typical chain of {@link ShapeTools} operations, which
+ * transforms the shape once per operation, with the same chain fused into
+ * one transform by {@link ShapeTransform}, for both shapes and areas.
+ * 
+ * <pre>
+ * java -cp target/classes:target/test-classes \
+ *   org.trebor.util.ShapeTransformBenchmark
+ * </pre>
+ */
+
+public class ShapeTransformBenchmark
+{
+  private static final int ITERATIONS = 20000;
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args)
+  {
+    final Shape star = ShapeTools.STAR;
+    final Area cat = new Area(ShapeTools.CAT);
+
+    for (int round = 0; round < ROUNDS; ++round)
+    {
+      System.out.printf("round %d%n", round);
+
+      time("shape chain", new Runnable()
+      {
+        public void run()
+        {
+          ShapeTools.rotate(ShapeTools.scale(
+            ShapeTools.translate(star, 10, 20), 3, 3), 45);
+        }
+      });
+      time("shape fused", new Runnable()
+      {
+        public void run()
+        {
+          new ShapeTransform()
+            .translate(10, 20)
+            .scale(3, 3)
+            .rotate(45)
+            .apply(star);
+        }
+      });
+      time("area chain", new Runnable()
+      {
+        public void run()
+        {
+          Area area = new Area(cat);
+          ShapeTools.translate(area, 10, 20);
+          ShapeTools.scale(area, 3, 3);
+          ShapeTools.rotate(area, 45);
+        }
+      });
+      time("area fused in place", new Runnable()
+      {
+        public void run()
+        {
+          new ShapeTransform()
+            .translate(10, 20)
+            .scale(3, 3)
+            .rotate(45)
+            .apply(new Area(cat));
+        }
+      });
+      time("normalize", new Runnable()
+      {
+        public void run()
+        {
+          ShapeTools.normalize(star);
+        }
+      });
+    }
+  }
+
+  private static void time(String name, Runnable operation)
+  {
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; ++i)
+      operation.run();
+    System.out.printf("  %-20s %8.3f us/op%n", name,
+      (System.nanoTime() - start) / 1e3 / ITERATIONS);
+  }
+}
@@ -0,0 +1,103 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.util.Collection;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class TextMeasureTest
+{
+  private static final Font[] FONTS =
+  {
+    new Font("Serif", Font.PLAIN, 12),
+    new Font("SansSerif", Font.BOLD, 30),
+  };
+
+  private static final FontRenderContext[] CONTEXTS =
+  {
+    TextMeasure.PLAIN_FONT_RENDER_CONTEXT,
+    new FontRenderContext(null, true, true),
+  };
+
+  private static final String[] STRINGS =
+  {
+    "", "Main Street", "WWWWW", "iiiii", "Hello, world!",
+  };
+
+  @Test
+  public void boundsTest()
+  {
+    TextMeasure measure = new TextMeasure(100);
+    for (int pass = 0; pass < 2; ++pass)
+      for (Font font: FONTS)
+        for (FontRenderContext frc: CONTEXTS)
+          for (String text: STRINGS)
+          {
+            Rectangle2D expected = font.getStringBounds(text, frc);
+            assertEquals(expected, measure.getStringBounds(font, frc, text));
+            assertEquals(expected.getWidth(),
+              measure.getAdvance(font, frc, text), 0);
+          }
+    assertTrue(measure.getCache().getHits() > 0);
+
+    // the caller may modify the returned bounds
+
+    Font font = FONTS[0];
+    FontRenderContext frc = CONTEXTS[0];
+    measure.getStringBounds(font, frc, "Main Street").setRect(0, 0, 1, 1);
+    assertEquals(font.getStringBounds("Main Street", frc),
+      measure.getStringBounds(font, frc, "Main Street"));
+  }
+
+  @Test
+  public void concurrentTest() throws Exception
+  {
+    // a small cache so that threads evict each others entries
+
+    final TextMeasure measure = new TextMeasure(8);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    Collection<Callable<Integer>> tasks = new Vector<Callable<Integer>>();
+    for (int t = 0; t < 8; ++t)
+    {
+      final int seed = t;
+      tasks.add(new Callable<Integer>()
+      {
+        public Integer call()
+        {
+          int mismatches = 0;
+          for (int i = 0; i < 2000; ++i)
+          {
+            Font font = FONTS[(i + seed) % FONTS.length];
+            FontRenderContext frc = CONTEXTS[(i / 2) % CONTEXTS.length];
+            String text = "label " + ((i * 7 + seed) % 20);
+            if (!font.getStringBounds(text, frc).equals(
+              measure.getStringBounds(font, frc, text)))
+              ++mismatches;
+          }
+          return mismatches;
+        }
+      });
+    }
+    try
+    {
+      for (Future<Integer> result: pool.invokeAll(tasks))
+        assertEquals(0, result.get().intValue());
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+    assertTrue(measure.getCache().size() <= 8);
+    assertTrue(measure.getCache().getEvictions() > 0);
+  }
+}
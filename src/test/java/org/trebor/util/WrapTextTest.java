@@ -0,0 +1,84 @@
+package org.trebor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+
+import org.junit.Test;
+import org.trebor.util.WrapText.Paragraph;
+
+public class WrapTextTest
+{
+  private static final String TEXT =
+    "The quick brown fox jumps over the lazy dog, then naps in the sun.";
+  private static final FontRenderContext FRC =
+    new FontRenderContext(null, true, true);
+
+  private final Font mFont = new Font("Serif", Font.PLAIN, 12);
+  private final Rectangle2D mBox = new Rectangle2D.Double(0, 0, 200, 100);
+
+  @Test
+  public void searchTest()
+  {
+    Font font = mFont.deriveFont(WrapText.MEASURE_SIZE);
+    Paragraph paragraph = WrapText.search(TEXT, font, FRC, 200, 100);
+    assertNotNull(paragraph);
+    assertTrue(paragraph.getLineCount() > 1);
+    assertTrue(paragraph.getHeight() <= 100);
+
+    // the fitted size is within a step of the largest size which fits
+
+    float fitted = paragraph.getFont().getSize2D();
+    float largest = fitted;
+    for (float size = fitted; size < fitted * 2; size += WrapText.TOLERANCE)
+      if (WrapText.layout(TEXT, font.deriveFont(size), FRC, 200, 100) != null)
+        largest = size;
+    assertTrue(largest + " > " + fitted,
+      largest - fitted <= 2 * WrapText.TOLERANCE);
+
+    // a box too small for the text at the minimum size does not fit
+
+    assertNull(WrapText.search(TEXT, font, FRC, 2, 2));
+  }
+
+  @Test
+  public void stepDownTest()
+  {
+    Font font = mFont.deriveFont(WrapText.MEASURE_SIZE);
+    Paragraph fitted = WrapText.search(TEXT, font, FRC, 200, 100);
+    float size = fitted.getFont().getSize2D();
+
+    // starting above the fitted size steps down to a size which fits
+
+    Paragraph paragraph =
+      WrapText.layoutDown(TEXT, font, FRC, 200, 100, size + 2);
+    assertNotNull(paragraph);
+    assertTrue(paragraph.getFont().getSize2D() <= size + WrapText.TOLERANCE);
+    assertTrue(paragraph.getFont().getSize2D() > size - 1);
+    assertNull(WrapText.layoutDown(TEXT, font, FRC, 2, 2, 4));
+  }
+
+  @Test
+  public void cacheTest()
+  {
+    // the size of the provided font does not change the result
+
+    Paragraph small = WrapText.fitParagraph(TEXT, mFont, FRC, mBox);
+    Paragraph large =
+      WrapText.fitParagraph(TEXT, mFont.deriveFont(40f), FRC, mBox);
+    assertSame(small, large);
+
+    // empty text fits with no lines
+
+    Paragraph empty = WrapText.fitParagraph("", mFont, FRC, mBox);
+    assertNotNull(empty);
+    assertEquals(0, empty.getLineCount());
+    assertEquals(0, empty.getHeight(), 0);
+  }
+}